@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.Map;
 import gamecontrol.GameController;
 import gamecontrol.GameState;
+import gamecontrol.AIChessController;
 import gamecontrol.NetworkedChessController;
 import gamecontrol.ChessController;
 import javafx.application.Platform;
@@ -139,6 +140,11 @@ public class BoardView {
                 //not your turn!
                 return;
             }
+            if (controller instanceof AIChessController
+                    && ((AIChessController) controller).isThinking()) {
+                //the computer is thinking
+                return;
+            }
 
             // Don't change the code above this :)
             if (isFirstClick) {
@@ -353,6 +359,8 @@ public class BoardView {
     public void reset(GameController newController) {
         if (controller instanceof NetworkedChessController) {
             ((NetworkedChessController) controller).close();
+        } else if (controller instanceof AIChessController) {
+            ((AIChessController) controller).close();
         }
         controller = newController;
         isRotated = false;
@@ -411,7 +419,7 @@ public class BoardView {
         /* Add the tiles */
         for (int row = 0; row < 8; row++) {
             for (int col = 0; col < 8; col++) {
-                Tile tile = new TileView(new Position(row, col));
+                Tile tile = new TileView(Position.of(row, col));
                 gridPane.add(tile.getRootNode(),
                         1 + tile.getPosition().getCol(),
                         1 + tile.getPosition().getRow());
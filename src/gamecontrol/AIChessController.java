@@ -1,7 +1,7 @@
 package gamecontrol;
 
 import gamecontrol.ai.AIChessEngine;
-import gamecontrol.ai.RandomChessEngine;
+import gamecontrol.ai.AlphaBetaChessEngine;
 import model.IllegalMoveException;
 import model.Move;
 import model.Side;
@@ -15,13 +15,17 @@ public class AIChessController extends ChessController {
 
     private Side mySide;
     private AIChessEngine aiChessEngine;
+    // set while the engine has its turn, until the human's moves are ready
+    private volatile boolean thinking;
+    // the thread choosing the engine's move, interrupted by close
+    private volatile Thread engineThread;
 
     public AIChessController() {
         this(Side.WHITE);
     }
 
     public AIChessController(Side s) {
-        this(s, new RandomChessEngine());
+        this(s, new AlphaBetaChessEngine());
     }
 
     public AIChessController(Side s, AIChessEngine ai) {
@@ -33,15 +37,58 @@ public class AIChessController extends ChessController {
     public void beginTurn() {
         super.beginTurn();
         if (getCurrentSide() != mySide && !getCurrentState().isGameOver()) {
+            // second thread while the engine thinks, so the UI isn't held up
+            thinking = true;
+            Thread think = new Thread(() -> performEngineMove(), "ai-move");
+            think.setDaemon(true);
+            engineThread = think;
+            think.start();
+        }
+    }
+
+    private void performEngineMove() {
+        try {
             Move selected = aiChessEngine.chooseNextMove(getCurrentMoves(),
                     getBoard());
+            // the game was reset or replaced while the engine was thinking
+            if (engineThread != Thread.currentThread()
+                    || Thread.currentThread().isInterrupted()) {
+                return;
+            }
             try {
                 super.makeMove(selected);
             } catch (IllegalMoveException e) {
-                beginTurn();
+                // the engine would only choose the same move again
+                e.printStackTrace();
+                return;
             }
             super.endTurn();
-            super.beginTurn();
+            if (!getCurrentState().isGameOver()) {
+                super.beginTurn();
+            }
+        } finally {
+            thinking = false;
+        }
+    }
+
+    /**
+     * Answers if the engine is choosing or making its move, when the
+     * human's clicks must be ignored
+     * @return true until the human's moves are ready
+     */
+    public boolean isThinking() {
+        return thinking;
+    }
+
+    /**
+     * Stops a move the engine is still choosing from being played, when
+     * this game is reset or replaced
+     */
+    public void close() {
+        Thread think = engineThread;
+        engineThread = null;
+        if (think != null) {
+            think.interrupt();
         }
     }
 
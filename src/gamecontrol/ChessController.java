@@ -10,13 +10,15 @@ import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+import model.Board;
+import model.BoardSnapshot;
 import model.IllegalMoveException;
 import model.Move;
 import model.Piece;
 import model.PieceType;
 import model.Position;
 import model.Side;
-import model.SideHasNoMovesException;
+import model.SideStatus;
 
 import model.chess.CastlingMove;
 import model.chess.ChessBoard;
@@ -33,7 +35,10 @@ import model.chess.PromotionMove;
  */
 public class ChessController implements GameController {
 
-    private ChessBoard board;
+    private Board board;
+    // replaced, never changed, after every move; readers on other threads
+    // see either the old position or the new one
+    private volatile BoardSnapshot snapshot;
     private Side currentSide;
     private Map<Piece, Set<Move>> currentMoves;
     private List<BiConsumer<Move, List<Position>>> moveCallbacks;
@@ -47,12 +52,23 @@ public class ChessController implements GameController {
 
 
     public ChessController() {
+        this(new ChessBoard());
+    }
+
+    /**
+     * Creates a controller that plays on the given board, for instance a
+     * BitboardChessBoard
+     *
+     * @param board a board set up in the starting position
+     */
+    public ChessController(Board board) {
         moveCallbacks = new ArrayList<>();
         stateCallbacks = new ArrayList<>();
         sideCallbacks = new ArrayList<>();
         promotionCallback = null;
         setCurrentState(ChessState.ONGOING);
-        setBoard(new ChessBoard());
+        setBoard(board);
+        snapshot = BoardSnapshot.of(board, Side.WHITE);
         setCurrentSide(Side.WHITE);
         setCurrentMoves(new HashMap<>());
     }
@@ -78,24 +94,16 @@ public class ChessController implements GameController {
 
     @Override
     public void beginTurn() {
-        boolean whiteInCheck = getCurrentState() == ChessState.WHITE_IN_CHECK;
-        boolean blackInCheck = getCurrentState() == ChessState.BLACK_IN_CHECK;
-        boolean sideIsWhite = getCurrentSide().equals(Side.WHITE);
-
-        boolean isInCheck = sideIsWhite && whiteInCheck
-                || !sideIsWhite && blackInCheck;
-        try {
-            setCurrentMoves(getBoard()
-                    .generateAllMovesForSide(getCurrentSide()));
-        } catch (SideHasNoMovesException e) {
-            if (isInCheck) {
-                setCurrentMoves(null);
-                setCurrentState((getCurrentSide() == Side.WHITE)
-                        ? ChessState.BLACK_WINS : ChessState.WHITE_WINS);
-            } else {
-                setCurrentMoves(null);
-                setCurrentState(ChessState.STALEMATE);
-            }
+        SideStatus status = getBoard().getSideStatus(getCurrentSide());
+        if (status == SideStatus.CHECKMATED) {
+            setCurrentMoves(null);
+            setCurrentState((getCurrentSide() == Side.WHITE)
+                    ? ChessState.BLACK_WINS : ChessState.WHITE_WINS);
+        } else if (status == SideStatus.STALEMATED) {
+            setCurrentMoves(null);
+            setCurrentState(ChessState.STALEMATE);
+        } else {
+            setCurrentMoves(getBoard().generateMovesForSide(getCurrentSide()));
         }
     }
 
@@ -103,7 +111,16 @@ public class ChessController implements GameController {
     public void endTurn() {
         setCurrentSide((getCurrentSide().equals(Side.WHITE)) ? Side.BLACK
                 : Side.WHITE);
-        if (getBoard().isInCheck(getCurrentSide())) {
+        if (getBoard().countRepetitions() >= 2) {
+            setCurrentMoves(null);
+            setCurrentState(ChessState.DRAW_BY_REPETITION);
+        } else if (getBoard().getHalfmoveClock() >= 100
+                && getBoard().getSideStatus(getCurrentSide())
+                    != SideStatus.CHECKMATED) {
+            // checkmate on the hundredth move still wins
+            setCurrentMoves(null);
+            setCurrentState(ChessState.DRAW_BY_FIFTY_MOVE_RULE);
+        } else if (getBoard().isInCheck(getCurrentSide())) {
             setCurrentState((getCurrentSide().equals(Side.BLACK))
                     ? ChessState.BLACK_IN_CHECK : ChessState.WHITE_IN_CHECK);
         } else {
@@ -113,7 +130,7 @@ public class ChessController implements GameController {
 
     @Override
     public Set<Move> getMovesForPieceAt(Position p) {
-        Piece piece = getBoard().getPieceAt(p);
+        Piece piece = snapshot.getPieceAt(p);
         return (piece == null || piece.getSide() != getCurrentSide())
                 ? new HashSet<>() : getCurrentMoves().get(piece);
     }
@@ -143,26 +160,26 @@ public class ChessController implements GameController {
             getBoard().movePiece(mover, m);
 
             List<Position> capturePositions = new ArrayList<>();
+            List<Position> changed = new ArrayList<>();
 
             capturePositions.add(m.getDestination());
+            changed.add(m.getStart());
+            changed.add(m.getDestination());
 
             // check for castling
+            Move moveTwo = null;
             if (m instanceof CastlingMove) {
                 CastlingMove cm = (CastlingMove) m;
                 CastlingMove.CastlingType castlingType = cm.getCastlingType();
-                Position start = new Position(mover.getSide().getBackRow(),
+                Position start = Position.of(mover.getSide().getBackRow(),
                         castlingType.getStartCol());
 
-                Position dest = new Position(mover.getSide().getBackRow(),
+                Position dest = Position.of(mover.getSide().getBackRow(),
                         castlingType.getDestCol());
 
-                Move moveTwo = new Move(start, dest);
+                moveTwo = new Move(start, dest);
                 Piece rook = getBoard().getPieceAt(start);
                 getBoard().movePiece(rook, moveTwo);
-                for (BiConsumer<Move, List<Position>> callBack
-                        : moveCallbacks) {
-                    callBack.accept(moveTwo, new ArrayList<>());
-                }
             }
 
             // check for pawn promotion
@@ -185,6 +202,17 @@ public class ChessController implements GameController {
                         ((PawnCaptureMove) m).getEnPassantCapturePosition());
             }
 
+            // publish the finished position before any listener looks at it
+            changed.addAll(capturePositions);
+            snapshot = snapshot.after(getBoard(), other(currentSide),
+                    changed);
+
+            if (moveTwo != null) {
+                for (BiConsumer<Move, List<Position>> callBack
+                        : moveCallbacks) {
+                    callBack.accept(moveTwo, new ArrayList<>());
+                }
+            }
             for (BiConsumer<Move, List<Position>> callBack : moveCallbacks) {
                 callBack.accept(m, capturePositions);
             }
@@ -195,7 +223,12 @@ public class ChessController implements GameController {
 
     @Override
     public Map<Piece, Position> getAllActivePiecesPositions() {
-        return getBoard().getAllActivePiecesPositions();
+        return snapshot.getAllActivePiecesPositions();
+    }
+
+    @Override
+    public BoardSnapshot getSnapshot() {
+        return snapshot;
     }
 
     @Override
@@ -248,7 +281,7 @@ public class ChessController implements GameController {
 
     @Override
     public String getSymbolForPieceAt(Position pos) {
-        Piece p = board.getPieceAt(pos);
+        Piece p = snapshot.getPieceAt(pos);
         if (p == null) {
             return "";
         }
@@ -257,12 +290,13 @@ public class ChessController implements GameController {
 
     @Override
     public boolean moveResultsInCapture(Move m) {
-        Piece mover = board.getPieceAt(m.getStart());
-        Piece target = board.getPieceAt(m.getDestination());
+        BoardSnapshot position = snapshot;
+        Piece mover = position.getPieceAt(m.getStart());
+        Piece target = position.getPieceAt(m.getDestination());
 
         if (m instanceof PawnCaptureMove
                 && ((PawnCaptureMove) m).isEnPassant()) {
-            target = board.getPieceAt(
+            target = position.getPieceAt(
                     ((PawnCaptureMove) m).getEnPassantCapturePosition());
         }
 
@@ -276,11 +310,11 @@ public class ChessController implements GameController {
         return res;
     }
 
-    protected ChessBoard getBoard() {
+    protected Board getBoard() {
         return board;
     }
 
-    private void setBoard(ChessBoard board) {
+    private void setBoard(Board board) {
         this.board = board;
     }
 
@@ -298,6 +332,10 @@ public class ChessController implements GameController {
         return found;
     }
 
+    private static Side other(Side s) {
+        return s == Side.WHITE ? Side.BLACK : Side.WHITE;
+    }
+
     private void setCurrentMoves(Map<Piece, Set<Move>> currentMoves) {
         this.currentMoves = currentMoves;
     }
@@ -4,6 +4,8 @@ public enum ChessState implements GameState {
     WHITE_WINS("White Wins"),
     BLACK_WINS("Black Wins"),
     STALEMATE("Stalemate"),
+    DRAW_BY_REPETITION("Draw by Threefold Repetition"),
+    DRAW_BY_FIFTY_MOVE_RULE("Draw by the Fifty-Move Rule"),
     WHITE_IN_CHECK("White is in Check"),
     BLACK_IN_CHECK("Black is in Check"),
     ONGOING("Ongoing");
@@ -15,7 +17,8 @@ public enum ChessState implements GameState {
     }
 
     public boolean isGameOver() {
-        return equals(WHITE_WINS) || equals(BLACK_WINS) || equals(STALEMATE);
+        return equals(WHITE_WINS) || equals(BLACK_WINS) || equals(STALEMATE)
+            || equals(DRAW_BY_REPETITION) || equals(DRAW_BY_FIFTY_MOVE_RULE);
     }
 
     @Override
@@ -7,6 +7,7 @@ import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+import model.BoardSnapshot;
 import model.IllegalMoveException;
 import model.Move;
 import model.Piece;
@@ -76,6 +77,15 @@ public interface GameController {
      */
     Map<Piece, Position> getAllActivePiecesPositions();
 
+    /**
+     * Gets the position after the last move as an immutable snapshot. A new
+     * snapshot is published after every move, so any thread may call this
+     * and read the result without locking.
+     *
+     * @return the current snapshot
+     */
+    BoardSnapshot getSnapshot();
+
     /**
      * Register callback for changes in board state / moves made on the board
      *
@@ -0,0 +1,253 @@
+package gamecontrol.ai;
+
+import model.Board;
+import model.Move;
+import model.Piece;
+import model.chess.BitboardChessBoard;
+import model.chess.ChessBoard;
+import model.chess.PackedMove;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+
+/**
+ * Chooses moves by searching ahead with alpha-beta, as deep as a budget of
+ * time and nodes per move allows. A node budget gives the same move every
+ * time for the same position, whatever the machine; a time budget keeps
+ * the wait for a move the same however hard the position is.
+ *
+ * The engine keeps one TranspositionTable for the whole game, so what it
+ * worked out for one move helps with the next.
+ *
+ * With more than one thread the engine runs a Lazy SMP search: helper
+ * threads search the same position on boards of their own while the
+ * calling thread searches as usual, and the threads share nothing but the
+ * table. Half of the helpers start a depth deeper, so that they are ahead
+ * of the others and fill the table with results the others will need.
+ * The move played is the calling thread's, and the budgets apply to it;
+ * the helpers are stopped as soon as it is done.
+ *
+ * The other parallel mode, Young Brothers Wait, splits one search tree
+ * between the threads of a ForkJoinPool instead; see Search. Either way a
+ * single thread runs the plain search, whose node counts are the same on
+ * every run.
+ */
+public class AlphaBetaChessEngine implements AIChessEngine {
+
+    /**
+     * How more than one thread share the work of a move
+     */
+    public enum ParallelMode {
+        LAZY_SMP,
+        YOUNG_BROTHERS_WAIT
+    }
+
+    public static final long DEFAULT_MILLIS = 1000;
+    public static final int DEFAULT_HASH_MEGABYTES = 32;
+
+    private final long millisPerMove;
+    private final long nodesPerMove;
+    private final int maxDepth;
+    private final TranspositionTable table;
+
+    private int threads = 1;
+    private ParallelMode parallelMode = ParallelMode.LAZY_SMP;
+    private ExecutorService helpers;
+    private ForkJoinPool pool;
+
+    private int lastDepth;
+    private int lastScore;
+    private long lastNodes;
+
+    /**
+     * Creates an engine that thinks for about a second per move
+     */
+    public AlphaBetaChessEngine() {
+        this(DEFAULT_MILLIS, Long.MAX_VALUE, Search.MAX_PLY - 1);
+    }
+
+    /**
+     * @param millisPerMove time allowed per move, in milliseconds
+     * @param nodesPerMove positions the search may visit per move
+     * @param maxDepth the deepest search, in plies
+     */
+    public AlphaBetaChessEngine(long millisPerMove, long nodesPerMove,
+            int maxDepth) {
+        this(millisPerMove, nodesPerMove, maxDepth, DEFAULT_HASH_MEGABYTES);
+    }
+
+    /**
+     * @param millisPerMove time allowed per move, in milliseconds
+     * @param nodesPerMove positions the search may visit per move
+     * @param maxDepth the deepest search, in plies
+     * @param hashMegabytes size of the transposition table, in MB
+     */
+    public AlphaBetaChessEngine(long millisPerMove, long nodesPerMove,
+            int maxDepth, int hashMegabytes) {
+        this.millisPerMove = millisPerMove;
+        this.nodesPerMove = nodesPerMove;
+        this.maxDepth = Math.min(maxDepth, Search.MAX_PLY - 1);
+        this.table = new TranspositionTable(hashMegabytes);
+    }
+
+    @Override
+    public Move chooseNextMove(Map<Piece, Set<Move>> pieceMoves, Board board) {
+        if (pieceMoves == null) {
+            return null;
+        }
+
+        // search a copy, so the game's board is never touched
+        BitboardChessBoard copy = board instanceof BitboardChessBoard
+            ? new BitboardChessBoard((BitboardChessBoard) board)
+            : new BitboardChessBoard((ChessBoard) board);
+        table.newSearch();
+
+        Search search = new Search(copy, table);
+        int move;
+        if (threads > 1
+                && parallelMode == ParallelMode.YOUNG_BROTHERS_WAIT) {
+            search.enableSplitting();
+            move = getPool().invoke(ForkJoinTask.adapt(() ->
+                        search.think(maxDepth, millisPerMove, nodesPerMove)));
+            lastNodes = search.getNodes();
+        } else {
+            move = thinkWithHelpers(search, copy);
+        }
+
+        lastDepth = search.getCompletedDepth();
+        lastScore = search.getScore();
+        return move == PackedMove.NONE ? null : copy.toMove(move);
+    }
+
+    // runs search on the calling thread and any Lazy SMP helpers alongside
+    private int thinkWithHelpers(Search search, BitboardChessBoard copy) {
+        List<Search> helperSearches = new ArrayList<>();
+        List<Future<?>> running = new ArrayList<>();
+        for (int i = 1; i < threads; i++) {
+            Search helper = new Search(new BitboardChessBoard(copy), table);
+            int firstDepth = 1 + i % 2;
+            helperSearches.add(helper);
+            running.add(getHelpers().submit(() -> helper.think(firstDepth,
+                            maxDepth, Long.MAX_VALUE, Long.MAX_VALUE)));
+        }
+
+        int move = search.think(maxDepth, millisPerMove, nodesPerMove);
+
+        lastNodes = search.getNodes();
+        for (Search helper : helperSearches) {
+            helper.stop();
+        }
+        for (int i = 0; i < running.size(); i++) {
+            waitFor(running.get(i));
+            lastNodes += helperSearches.get(i).getNodes();
+        }
+        return move;
+    }
+
+    /**
+     * Sets how many threads search each move, the calling thread included
+     *
+     * @param threads at least 1; 1 searches on the calling thread alone
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+                "Need at least one thread: " + threads);
+        }
+        if (helpers != null) {
+            helpers.shutdown();
+            helpers = null;
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Chooses how the threads set by setThreads share the work
+     *
+     * @param mode LAZY_SMP, the default, or YOUNG_BROTHERS_WAIT
+     */
+    public void setParallelMode(ParallelMode mode) {
+        this.parallelMode = mode;
+    }
+
+    public ParallelMode getParallelMode() {
+        return parallelMode;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    // created on first use, and kept for the engine's later moves
+    private ExecutorService getHelpers() {
+        if (helpers == null) {
+            helpers = Executors.newFixedThreadPool(threads - 1, r -> {
+                Thread t = new Thread(r, "search-helper");
+                // helpers must not keep the program running on exit
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return helpers;
+    }
+
+    private ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(threads);
+        }
+        return pool;
+    }
+
+    private static void waitFor(Future<?> helper) {
+        try {
+            helper.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Search helper failed",
+                e.getCause());
+        }
+    }
+
+    /**
+     * @return the depth the last move was chosen at
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    /**
+     * @return what the last move chosen was judged to be worth, in
+     * centipawns for the side that made it
+     */
+    public int getLastScore() {
+        return lastScore;
+    }
+
+    /**
+     * @return the number of positions searched for the last move, by all
+     * threads together
+     */
+    public long getLastNodes() {
+        return lastNodes;
+    }
+
+    /**
+     * @return the table shared by the engine's searches, for its statistics
+     */
+    public TranspositionTable getTranspositionTable() {
+        return table;
+    }
+}
@@ -0,0 +1,611 @@
+package gamecontrol.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import model.Side;
+import model.chess.BitboardChessBoard;
+import model.chess.MoveList;
+import model.chess.MovePicker;
+import model.chess.PackedMove;
+
+/**
+ * Negamax alpha-beta search with iterative deepening on a
+ * BitboardChessBoard of its own. Each depth is searched in full before the
+ * next is started, and the moves at the root are reordered after each one
+ * so that the best so far is searched first. When the time or node budget
+ * runs out in the middle of a depth, that depth is thrown away and the best
+ * move of the last completed one is played, so the answer never depends on
+ * how far an unfinished search happened to get.
+ *
+ * At the horizon a quiescence search follows captures and queen
+ * promotions until the position is quiet, so that a position is never
+ * judged half way through an exchange. Only captures are generated there,
+ * those that lose material or can't raise the score enough are skipped, and
+ * the side to move may always settle for the evaluation instead.
+ *
+ * Every position searched is recorded in a TranspositionTable, which gives
+ * the move to try first when the position comes up again and often a
+ * score good enough not to search it at all.
+ *
+ * With splitting enabled, and think called inside a ForkJoinPool, the
+ * search runs Young Brothers Wait: at a node with enough depth left the
+ * first move is searched alone, and once it has set a bound the remaining
+ * moves are searched as parallel tasks, each on its own copy of the board.
+ * The tasks share the node's bounds through a SplitPoint, starting with
+ * the best score found so far, and the rest are abandoned as soon as one
+ * of them causes a cutoff.
+ *
+ * Scores are in centipawns from the point of view of the side to move.
+ * A search is meant for a single thread and a single call to think; only
+ * stop may be called from another thread.
+ */
+class Search {
+
+    static final int INFINITY = 32000;
+
+    // being mated after n plies scores -MATE + n, so shorter mates count
+    // for more
+    static final int MATE = 31000;
+
+    static final int MAX_PLY = 128;
+
+    // how often, in nodes, the clock is read
+    private static final int CHECK_INTERVAL = 1024;
+
+    // what positional gains can add to a capture in quiescence, beyond
+    // the material it wins
+    private static final int DELTA_MARGIN = 200;
+
+    // below this many plies a subtree is too small to be worth a task
+    private static final int MIN_SPLIT_DEPTH = 4;
+
+    private final BitboardChessBoard board;
+    private final TranspositionTable table;
+    private final MovePicker[] pickers = new MovePicker[MAX_PLY];
+    private final int[][] killers;
+
+    // shared by every task of one think
+    private Limits limits;
+    // the node this search is one of the younger brothers of, or null
+    private final SplitPoint splitPoint;
+    // the ply of the brother's own move, or -1 if this isn't a brother
+    private final int brotherPly;
+    private boolean splitting;
+
+    private long nodes;
+    private long reportedNodes;
+    private boolean stopped;
+    private volatile boolean stopRequested;
+
+    private int completedDepth;
+    private int score;
+
+    /**
+     * @param board the position to search, which the search plays moves
+     * on and takes them back
+     * @param table where results are looked up and recorded
+     */
+    Search(BitboardChessBoard board, TranspositionTable table) {
+        this.board = board;
+        this.table = table;
+        this.killers = new int[MAX_PLY][2];
+        this.splitPoint = null;
+        this.brotherPly = -1;
+    }
+
+    // a search for one younger brother, on a board of its own
+    private Search(Search parent, BitboardChessBoard board,
+            SplitPoint splitPoint, int brotherPly) {
+        this.board = board;
+        this.table = parent.table;
+        this.killers = new int[MAX_PLY][];
+        for (int ply = 0; ply < MAX_PLY; ply++) {
+            killers[ply] = parent.killers[ply].clone();
+        }
+        this.limits = parent.limits;
+        this.splitPoint = splitPoint;
+        this.brotherPly = brotherPly;
+        this.splitting = true;
+    }
+
+    /**
+     * Lets think search younger brothers in parallel. think must then be
+     * called from a task running in a ForkJoinPool.
+     */
+    void enableSplitting() {
+        splitting = true;
+    }
+
+    /**
+     * Searches one depth deeper at a time until maxDepth is done or the
+     * budget runs out. The first depth is always finished, so there is a
+     * move to play however small the budget.
+     *
+     * @param maxDepth the deepest search to start, in plies
+     * @param millis time allowed, in milliseconds
+     * @param maxNodes nodes allowed
+     * @return the best move of the last completed depth, or PackedMove.NONE
+     * if the side to move has no legal moves
+     */
+    int think(int maxDepth, long millis, long maxNodes) {
+        return think(1, maxDepth, millis, maxNodes);
+    }
+
+    /**
+     * Like think(maxDepth, millis, maxNodes), but skipping the depths
+     * before firstDepth, as the helpers of a parallel search do so that
+     * they are not all at the same depth at once
+     */
+    int think(int firstDepth, int maxDepth, long millis, long maxNodes) {
+        limits = new Limits(millis, maxNodes);
+
+        MoveList rootMoves = new MoveList();
+        board.generateLegalMoves(board.getSideToMove(), rootMoves);
+        if (rootMoves.isEmpty()) {
+            return PackedMove.NONE;
+        }
+        // start with the move an earlier search thought best
+        moveToFront(rootMoves, TranspositionTable.move(
+                    table.probe(board.getHashKey())));
+
+        for (int depth = firstDepth; depth <= maxDepth; depth++) {
+            int result = searchRoot(depth, rootMoves);
+            if (stopped) {
+                break;
+            }
+            score = result;
+            completedDepth = depth;
+            limits.depthCompleted = true;
+            // a mate found won't be improved on by looking deeper, and a
+            // depth rarely takes less time than all before it together
+            if (Math.abs(score) >= MATE - MAX_PLY
+                    || System.nanoTime() - limits.start > limits.budget / 2) {
+                break;
+            }
+        }
+        reportNodes();
+        return rootMoves.get(0);
+    }
+
+    /**
+     * Makes think return soon, from another thread. Unlike running out of
+     * budget, this also cuts short the first depth.
+     */
+    void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * @return the depth of the last search completed by think
+     */
+    int getCompletedDepth() {
+        return completedDepth;
+    }
+
+    /**
+     * @return the score of the move think returned, for the side to move
+     */
+    int getScore() {
+        return score;
+    }
+
+    /**
+     * @return the number of positions visited, by this search and any
+     * tasks it split off, including any in a depth that was cut short
+     */
+    long getNodes() {
+        return limits == null ? nodes : limits.nodes.get();
+    }
+
+    // searches every root move and moves the best to the front of moves
+    private int searchRoot(int depth, MoveList moves) {
+        int alpha = -INFINITY;
+        int bestMove = moves.get(0);
+        for (int i = 0; i < moves.size(); i++) {
+            if (i > 0 && splitting && depth >= MIN_SPLIT_DEPTH) {
+                MoveList rest = new MoveList();
+                for (int j = i; j < moves.size(); j++) {
+                    rest.add(moves.get(j));
+                }
+                SplitPoint sp = searchBrothers(rest, depth, 0, alpha,
+                        INFINITY);
+                if (stopped) {
+                    return 0;
+                }
+                if (sp.best > alpha) {
+                    alpha = sp.best;
+                    bestMove = sp.bestMove;
+                }
+                break;
+            }
+
+            board.makeMove(moves.get(i));
+            int result = -search(depth - 1, 1, -INFINITY, -alpha);
+            board.unmakeMove();
+            if (stopped) {
+                return 0;
+            }
+            if (result > alpha) {
+                alpha = result;
+                bestMove = moves.get(i);
+            }
+        }
+
+        moveToFront(moves, bestMove);
+        table.store(board.getHashKey(), bestMove, toTable(alpha, 0), depth,
+                TranspositionTable.EXACT);
+        return alpha;
+    }
+
+    private static void moveToFront(MoveList moves, int move) {
+        for (int i = 1; i < moves.size(); i++) {
+            if (moves.get(i) == move) {
+                for (int j = i; j > 0; j--) {
+                    moves.set(j, moves.get(j - 1));
+                }
+                moves.set(0, move);
+                return;
+            }
+        }
+    }
+
+    private int search(int depth, int ply, int alpha, int beta) {
+        if (mustStop()) {
+            return 0;
+        }
+        if (board.isRepetition() || board.getHalfmoveClock() >= 100) {
+            return 0;
+        }
+        if (depth <= 0) {
+            return quiesce(ply, alpha, beta);
+        }
+        if (ply >= MAX_PLY - 1) {
+            return evaluate();
+        }
+
+        long key = board.getHashKey();
+        long entry = table.probe(key);
+        if (entry != 0 && TranspositionTable.depth(entry) >= depth) {
+            int stored = fromTable(TranspositionTable.score(entry), ply);
+            int bound = TranspositionTable.bound(entry);
+            if (bound == TranspositionTable.EXACT
+                    || bound == TranspositionTable.LOWER_BOUND
+                        && stored >= beta
+                    || bound == TranspositionTable.UPPER_BOUND
+                        && stored <= alpha) {
+                return stored;
+            }
+        }
+        int searchedDepth = depth;
+        int originalAlpha = alpha;
+
+        Side us = board.getSideToMove();
+        boolean inCheck = board.isInCheck(us);
+        if (inCheck) {
+            // don't let a check push a threat over the horizon
+            depth++;
+        }
+
+        MovePicker picker = picker(ply);
+        picker.reset(TranspositionTable.move(entry), killers[ply][0],
+                killers[ply][1]);
+        int best = -INFINITY;
+        int bestMove = PackedMove.NONE;
+        int move;
+        while ((move = picker.next()) != PackedMove.NONE) {
+            if (ply == brotherPly) {
+                // another brother may have raised the split point's alpha
+                // since this one started, which narrows the window here
+                beta = Math.min(beta, -splitPoint.alpha);
+                if (best >= beta) {
+                    break;
+                }
+            }
+            if (bestMove != PackedMove.NONE && splitting
+                    && depth >= MIN_SPLIT_DEPTH) {
+                // the eldest brother has set a bound: search the rest
+                // in parallel
+                MoveList rest = new MoveList();
+                for (; move != PackedMove.NONE; move = picker.next()) {
+                    rest.add(move);
+                }
+                SplitPoint sp = searchBrothers(rest, depth, ply, alpha, beta);
+                if (stopped) {
+                    return 0;
+                }
+                if (sp.best > best) {
+                    best = sp.best;
+                    bestMove = sp.bestMove;
+                    if (best >= beta) {
+                        rememberKiller(ply, bestMove);
+                    }
+                }
+                break;
+            }
+
+            board.makeMove(move);
+            int result = -search(depth - 1, ply + 1, -beta, -alpha);
+            board.unmakeMove();
+            if (stopped) {
+                return 0;
+            }
+            if (result > best) {
+                best = result;
+                bestMove = move;
+                if (result > alpha) {
+                    alpha = result;
+                    if (alpha >= beta) {
+                        rememberKiller(ply, move);
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (best == -INFINITY) {
+            return inCheck ? -MATE + ply : 0;
+        }
+
+        int bound = best >= beta ? TranspositionTable.LOWER_BOUND
+            : best > originalAlpha ? TranspositionTable.EXACT
+            : TranspositionTable.UPPER_BOUND;
+        table.store(key, bestMove, toTable(best, ply), searchedDepth, bound);
+        return best;
+    }
+
+    // counts a node, and answers if the search has been stopped
+    private boolean mustStop() {
+        if (++nodes % CHECK_INTERVAL == 0) {
+            checkBudget();
+        }
+        if (splitPoint != null && splitPoint.isCutOff()) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    // searches captures only until the position is quiet, so that the
+    // horizon never falls in the middle of an exchange. The side to move
+    // may stand pat on the evaluation instead of capturing, unless it is
+    // in check, when every evasion is searched.
+    private int quiesce(int ply, int alpha, int beta) {
+        if (mustStop()) {
+            return 0;
+        }
+        if (ply >= MAX_PLY - 1) {
+            return evaluate();
+        }
+
+        boolean inCheck = board.isInCheck(board.getSideToMove());
+        int best = -INFINITY;
+        int standPat = 0;
+        MovePicker picker = picker(ply);
+        if (inCheck) {
+            picker.reset(PackedMove.NONE, PackedMove.NONE, PackedMove.NONE);
+        } else {
+            standPat = evaluate();
+            if (standPat >= beta) {
+                return standPat;
+            }
+            best = standPat;
+            alpha = Math.max(alpha, standPat);
+            picker.resetCaptures();
+        }
+
+        int move;
+        while ((move = picker.next()) != PackedMove.NONE) {
+            // a capture that can't raise alpha even if the piece is won for
+            // nothing isn't worth playing
+            if (!inCheck && standPat + board.materialGain(move)
+                    + DELTA_MARGIN <= alpha) {
+                continue;
+            }
+            board.makeMove(move);
+            int result = -quiesce(ply + 1, -beta, -alpha);
+            board.unmakeMove();
+            if (stopped) {
+                return 0;
+            }
+            if (result > best) {
+                best = result;
+                if (result > alpha) {
+                    alpha = result;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (best == -INFINITY) {
+            return -MATE + ply;
+        }
+        return best;
+    }
+
+    // searches moves from the current position as parallel tasks, and
+    // waits for them all
+    private SplitPoint searchBrothers(MoveList moves, int depth, int ply,
+            int alpha, int beta) {
+        SplitPoint sp = new SplitPoint(splitPoint, alpha, beta);
+        List<Brother> brothers = new ArrayList<>(moves.size());
+        for (int i = 0; i < moves.size(); i++) {
+            brothers.add(new Brother(this, moves.get(i), depth - 1, ply + 1,
+                        sp));
+        }
+        ForkJoinTask.invokeAll(brothers);
+
+        // the brothers stop early only for a cutoff at sp, which leaves a
+        // good result, or for a reason that stops this search too
+        if (stopRequested || limits.stopped
+                || splitPoint != null && splitPoint.isCutOff()) {
+            stopped = true;
+        }
+        return sp;
+    }
+
+    private MovePicker picker(int ply) {
+        if (pickers[ply] == null) {
+            pickers[ply] = new MovePicker(board);
+        }
+        return pickers[ply];
+    }
+
+    // quiet moves that refuted one position are tried early in its
+    // siblings, which often have the same answer
+    private void rememberKiller(int ply, int move) {
+        if (PackedMove.isCapture(move) || PackedMove.isPromotion(move)
+                || killers[ply][0] == move) {
+            return;
+        }
+        killers[ply][1] = killers[ply][0];
+        killers[ply][0] = move;
+    }
+
+    // the table holds mate scores counted from the position stored, not
+    // from the root, as the same position can come up at any ply
+    private static int toTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) {
+            return score + ply;
+        } else if (score <= -MATE + MAX_PLY) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= MATE - MAX_PLY) {
+            return score - ply;
+        } else if (score <= -MATE + MAX_PLY) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    private int evaluate() {
+        Side us = board.getSideToMove();
+        Side them = us == Side.WHITE ? Side.BLACK : Side.WHITE;
+        return board.getMaterial(us) + board.getPieceSquareScore(us)
+            - board.getMaterial(them) - board.getPieceSquareScore(them);
+    }
+
+    private void reportNodes() {
+        limits.nodes.addAndGet(nodes - reportedNodes);
+        reportedNodes = nodes;
+    }
+
+    private void checkBudget() {
+        reportNodes();
+        if (stopRequested || limits.stopped) {
+            stopped = true;
+        } else if (limits.depthCompleted
+                && (limits.nodes.get() >= limits.maxNodes
+                    || System.nanoTime() - limits.start >= limits.budget)) {
+            // the first depth always runs to the end
+            limits.stopped = true;
+            stopped = true;
+        }
+    }
+
+    /**
+     * The budget of one think, and how much of it all its tasks have used
+     */
+    private static class Limits {
+        final long start = System.nanoTime();
+        final long budget;
+        final long maxNodes;
+        final AtomicLong nodes = new AtomicLong();
+        volatile boolean depthCompleted;
+        volatile boolean stopped;
+
+        Limits(long millis, long maxNodes) {
+            this.budget = millis >= Long.MAX_VALUE / 1000000L
+                ? Long.MAX_VALUE : millis * 1000000L;
+            this.maxNodes = maxNodes;
+        }
+    }
+
+    /**
+     * A node whose younger brothers are being searched in parallel. Each
+     * brother starts from the best score found so far, and rereads it
+     * before each of its own moves, so a better score found by one brother
+     * narrows the window of the others while they run. The first to reach
+     * beta cuts the others off, along with all the tasks they split off in
+     * turn.
+     */
+    private static class SplitPoint {
+        private final SplitPoint parent;
+        private final int beta;
+        private volatile int alpha;
+        private volatile boolean cutOff;
+        private int best = -INFINITY;
+        private int bestMove = PackedMove.NONE;
+
+        SplitPoint(SplitPoint parent, int alpha, int beta) {
+            this.parent = parent;
+            this.alpha = alpha;
+            this.beta = beta;
+        }
+
+        synchronized void offer(int move, int score) {
+            if (score > best) {
+                best = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    cutOff = score >= beta;
+                }
+            }
+        }
+
+        boolean isCutOff() {
+            for (SplitPoint sp = this; sp != null; sp = sp.parent) {
+                if (sp.cutOff) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Searches one younger brother on a copy of the parent's board. The
+     * parent waits for its brothers without touching its board, so the
+     * copy can be made when the task runs, and not at all if the brother
+     * is cut off before it starts.
+     */
+    @SuppressWarnings("serial")
+    private static class Brother extends RecursiveAction {
+        private final Search parent;
+        private final int move;
+        private final int depth;
+        private final int ply;
+        private final SplitPoint sp;
+
+        Brother(Search parent, int move, int depth, int ply, SplitPoint sp) {
+            this.parent = parent;
+            this.move = move;
+            this.depth = depth;
+            this.ply = ply;
+            this.sp = sp;
+        }
+
+        @Override
+        protected void compute() {
+            if (sp.isCutOff()) {
+                return;
+            }
+            BitboardChessBoard board = new BitboardChessBoard(parent.board);
+            board.makeMove(move);
+            Search search = new Search(parent, board, sp, ply);
+            int result = -search.search(depth, ply, -sp.beta, -sp.alpha);
+            if (!search.stopped) {
+                sp.offer(move, result);
+            }
+            search.reportNodes();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package gamecontrol.ai;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size cache of search results keyed by Zobrist hash, shared by
+ * every thread searching the same game.
+ *
+ * Each entry is two longs: the data, packed by pack, and the key XORed with
+ * the data. Threads read and write entries without any locking, so one may
+ * read an entry another is half way through writing. The key it gets back
+ * from XORing the two longs then matches no position, and the torn entry
+ * is simply not found.
+ *
+ * Entries are grouped in buckets of four, which fill one 64-byte cache
+ * line. A new result replaces an entry for the same position if there is
+ * one, and otherwise the entry least worth keeping: the shallowest,
+ * counting entries left from earlier searches as shallower than they are.
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 3;
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+
+    private static final int BUCKET_ENTRIES = 4;
+    private static final int BUCKET_LONGS = 2 * BUCKET_ENTRIES;
+    private static final int BUCKET_BYTES = 8 * BUCKET_LONGS;
+
+    // an entry left from a search this many searches ago is worth as much
+    // as one this many plies deeper from the current search
+    private static final int AGE_WEIGHT = 8;
+    private static final int AGE_MASK = 63;
+
+    // buckets sampled by getFill
+    private static final int FILL_SAMPLE = 1000;
+
+    private final long[] table;
+    private final int bucketMask;
+    private int age;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    /**
+     * Creates a table of at most megabytes MB, rounded down to a power of
+     * two of buckets
+     *
+     * @param megabytes memory to use, at least 1
+     */
+    public TranspositionTable(int megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException(
+                "Table needs at least 1 MB: " + megabytes);
+        }
+        long buckets = Long.highestOneBit(
+                ((long) megabytes << 20) / BUCKET_BYTES);
+        // a Java array holds fewer than 2^31 longs
+        buckets = Math.min(buckets, (1L << 30) / BUCKET_LONGS);
+        table = new long[(int) buckets * BUCKET_LONGS];
+        bucketMask = (int) buckets - 1;
+    }
+
+    /**
+     * Marks the start of a new search, so entries from earlier ones are
+     * replaced first
+     */
+    public void newSearch() {
+        age = (age + 1) & AGE_MASK;
+    }
+
+    /**
+     * Empties the table and its statistics
+     */
+    public void clear() {
+        Arrays.fill(table, 0L);
+        probes.reset();
+        hits.reset();
+        stores.reset();
+    }
+
+    /**
+     * Looks up a position
+     *
+     * @param key its Zobrist key
+     * @return the packed data stored for it, or 0 if there is none
+     */
+    public long probe(long key) {
+        probes.increment();
+        int bucket = bucketOf(key);
+        for (int i = bucket; i < bucket + BUCKET_LONGS; i += 2) {
+            long data = table[i + 1];
+            if ((table[i] ^ data) == key && data != 0) {
+                hits.increment();
+                return data;
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * Records what a search found for a position
+     *
+     * @param key its Zobrist key
+     * @param move the best move found, or PackedMove.NONE
+     * @param score the score, with mates counted from this position
+     * @param depth the depth searched
+     * @param bound EXACT, or LOWER_BOUND or UPPER_BOUND if the search was
+     * cut off
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        stores.increment();
+        int bucket = bucketOf(key);
+        int replace = bucket;
+        int worst = Integer.MAX_VALUE;
+        for (int i = bucket; i < bucket + BUCKET_LONGS; i += 2) {
+            long data = table[i + 1];
+            if ((table[i] ^ data) == key || data == 0) {
+                // keep the move we knew if this search found none
+                if (move == 0) {
+                    move = move(data);
+                }
+                replace = i;
+                break;
+            }
+            int worth = depth(data)
+                - AGE_WEIGHT * ((age - age(data)) & AGE_MASK);
+            if (worth < worst) {
+                worst = worth;
+                replace = i;
+            }
+        }
+        long data = pack(move, score, depth, bound, age);
+        table[replace] = key ^ data;
+        table[replace + 1] = data;
+    }
+
+    /**
+     * @return the share of lookups that found their position, from 0 to 1
+     */
+    public double getHitRate() {
+        long n = probes.sum();
+        return n == 0 ? 0 : (double) hits.sum() / n;
+    }
+
+    /**
+     * @return the share of entries filled by the current search, from 0
+     * to 1, estimated from the first buckets
+     */
+    public double getFill() {
+        int buckets = Math.min(FILL_SAMPLE, bucketMask + 1);
+        int used = 0;
+        for (int i = 0; i < buckets * BUCKET_LONGS; i += 2) {
+            long data = table[i + 1];
+            if (data != 0 && age(data) == age) {
+                used++;
+            }
+        }
+        return (double) used / (buckets * BUCKET_ENTRIES);
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getStores() {
+        return stores.sum();
+    }
+
+    /**
+     * @return the number of entries the table holds
+     */
+    public int getCapacity() {
+        return (bucketMask + 1) * BUCKET_ENTRIES;
+    }
+
+    private int bucketOf(long key) {
+        return ((int) key & bucketMask) * BUCKET_LONGS;
+    }
+
+    // move in bits 0-15, score in 16-31, depth in 32-39, bound in 40-41
+    // and age in 42-47; the bound is never 0, so neither is the data
+    private static long pack(int move, int score, int depth, int bound,
+            int age) {
+        return (move & 0xFFFFL)
+            | (score & 0xFFFFL) << 16
+            | (long) Math.max(0, Math.min(depth, 255)) << 32
+            | (long) bound << 40
+            | (long) age << 42;
+    }
+
+    public static int move(long data) {
+        return (int) data & 0xFFFF;
+    }
+
+    public static int score(long data) {
+        return (short) (data >>> 16);
+    }
+
+    public static int depth(long data) {
+        return (int) (data >>> 32) & 0xFF;
+    }
+
+    public static int bound(long data) {
+        return (int) (data >>> 40) & 3;
+    }
+
+    private static int age(long data) {
+        return (int) (data >>> 42) & AGE_MASK;
+    }
+}
@@ -36,8 +36,56 @@ public interface Board {
      * @throws SideHasNoMovesException Throws exception if
      * no moves are available
      */
-    Map<Piece, Set<Move>> generateAllMovesForSide(Side s)
-        throws SideHasNoMovesException;
+    default Map<Piece, Set<Move>> generateAllMovesForSide(Side s)
+        throws SideHasNoMovesException {
+        Map<Piece, Set<Move>> moves = generateMovesForSide(s);
+        for (Set<Move> pieceMoves : moves.values()) {
+            if (!pieceMoves.isEmpty()) {
+                return moves;
+            }
+        }
+        throw new SideHasNoMovesException(s.toString() + " has no moves.");
+    }
+
+    /**
+     * Generates all possible moves for a side. Unlike generateAllMovesForSide
+     * this never throws: a side without moves gets empty sets.
+     *
+     * @param s Side in question
+     * @return A map of piece to sets of moves for that piece
+     */
+    Map<Piece, Set<Move>> generateMovesForSide(Side s);
+
+    /**
+     * Counts the legal moves of a side without generating them
+     *
+     * @param s Side in question
+     * @return the number of legal moves
+     */
+    int countLegalMoves(Side s);
+
+    /**
+     * Answers if a side has at least one legal move. Stops at the first one
+     * found, so it is the cheapest way to detect the end of the game.
+     *
+     * @param s Side in question
+     * @return
+     */
+    boolean hasLegalMove(Side s);
+
+    /**
+     * Answers if a side has a legal move, and if not whether it is
+     * checkmated or stalemated. Cheaper than generating the moves.
+     *
+     * @param s Side in question
+     * @return the side's status
+     */
+    default SideStatus getSideStatus(Side s) {
+        if (hasLegalMove(s)) {
+            return SideStatus.CAN_MOVE;
+        }
+        return isInCheck(s) ? SideStatus.CHECKMATED : SideStatus.STALEMATED;
+    }
 
     /**
      * Returns the positions of all active on the board pieces
@@ -46,6 +94,72 @@ public interface Board {
      */
     Map<Piece, Position> getAllActivePiecesPositions();
 
+    /**
+     * Answers if the king of a side is currently under attack
+     *
+     * @param s Side in question
+     * @return
+     */
+    boolean isInCheck(Side s);
+
+    /**
+     * Returns a hash of the current position. Positions that are the same
+     * for the rules of the game, including whose turn it is, get the same
+     * key.
+     *
+     * @return
+     */
+    long getHashKey();
+
+    /**
+     * Counts how many times the current position, with the same side to
+     * move, came up earlier in the game. Only positions since the last
+     * capture or pawn move are looked at, since none before can come back.
+     *
+     * @return 0 for a new position, 2 once it has occurred three times
+     */
+    int countRepetitions();
+
+    /**
+     * Returns the number of moves since the last capture or pawn move, each
+     * side's move counting as one. The game is drawn once it reaches 100.
+     *
+     * @return
+     */
+    int getHalfmoveClock();
+
+    /**
+     * Static exchange evaluation: works out what a move wins or loses on its
+     * destination square once both sides have made every capture and
+     * recapture there that pays, cheapest piece first, without playing
+     * anything on the board. A capture that loses material, or a move onto
+     * a square where the piece is simply lost, comes out negative.
+     *
+     * @param m a legal move in the current position
+     * @return the expected material gain for the side making m, in the
+     * units of getMaterial
+     */
+    int see(Move m);
+
+    /**
+     * Returns the total value of a side's pieces, kept up to date as pieces
+     * are moved, captured and replaced, so it costs nothing to read
+     *
+     * @param s Side in question
+     * @return the material of s
+     */
+    int getMaterial(Side s);
+
+    /**
+     * Returns the sum of the piece-square bonuses of a side's pieces: how
+     * well placed they are, independent of what they are worth. Kept up to
+     * date like getMaterial.
+     *
+     * @param s Side in question
+     * @return the piece-square score of s
+     */
+    int getPieceSquareScore(Side s);
+
     /**
      * Get the piece at a particular position
      *
@@ -0,0 +1,124 @@
+package model;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable picture of a board at one moment: where every piece stands,
+ * whose turn it is and the position's hash key. A controller publishes a
+ * new snapshot after each move, so the UI, the network thread or an
+ * analysis engine can read a consistent position without locks while the
+ * game moves on.
+ *
+ * The squares are kept row by row, and a snapshot taken after a move
+ * copies only the rows the move changed. The other rows are shared with
+ * the snapshot before it, so a new snapshot costs a few small arrays
+ * rather than a copy of the board.
+ */
+public final class BoardSnapshot {
+
+    private static final int SIZE = 8;
+
+    // never written after construction, which is what makes sharing rows
+    // between snapshots safe
+    private final Piece[][] rows;
+    private final Side sideToMove;
+    private final long hashKey;
+    private final int ply;
+
+    private BoardSnapshot(Piece[][] rows, Side sideToMove, long hashKey,
+            int ply) {
+        this.rows = rows;
+        this.sideToMove = sideToMove;
+        this.hashKey = hashKey;
+        this.ply = ply;
+    }
+
+    /**
+     * Takes a snapshot of every square of board
+     *
+     * @param board the board to copy
+     * @param sideToMove the side whose turn it is
+     * @return the snapshot
+     */
+    public static BoardSnapshot of(Board board, Side sideToMove) {
+        Piece[][] rows = new Piece[SIZE][];
+        for (int row = 0; row < SIZE; row++) {
+            rows[row] = readRow(board, row);
+        }
+        return new BoardSnapshot(rows, sideToMove, board.getHashKey(), 0);
+    }
+
+    /**
+     * Takes the snapshot that follows this one after a move. Only the rows
+     * holding a changed square are read from board; the rest are shared
+     * with this snapshot, which is left as it was.
+     *
+     * @param board the board this snapshot was taken of, after the move
+     * @param sideToMove the side whose turn it is after the move
+     * @param changed every square the move emptied or filled
+     * @return the new snapshot
+     */
+    public BoardSnapshot after(Board board, Side sideToMove,
+            Collection<Position> changed) {
+        Piece[][] next = rows.clone();
+        for (Position p : changed) {
+            if (next[p.getRow()] == rows[p.getRow()]) {
+                next[p.getRow()] = readRow(board, p.getRow());
+            }
+        }
+        return new BoardSnapshot(next, sideToMove, board.getHashKey(),
+                ply + 1);
+    }
+
+    private static Piece[] readRow(Board board, int row) {
+        Piece[] pieces = new Piece[SIZE];
+        for (int col = 0; col < SIZE; col++) {
+            pieces[col] = board.getPieceAt(Position.of(row, col));
+        }
+        return pieces;
+    }
+
+    /**
+     * @param p Position in question
+     * @return the piece at p, or null if the square was empty
+     */
+    public Piece getPieceAt(Position p) {
+        return rows[p.getRow()][p.getCol()];
+    }
+
+    /**
+     * @return the positions of all pieces in this snapshot
+     */
+    public Map<Piece, Position> getAllActivePiecesPositions() {
+        Map<Piece, Position> all = new HashMap<>();
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                if (rows[row][col] != null) {
+                    all.put(rows[row][col], Position.of(row, col));
+                }
+            }
+        }
+        return all;
+    }
+
+    public Side getSideToMove() {
+        return sideToMove;
+    }
+
+    /**
+     * @return the board's hash key when the snapshot was taken
+     */
+    public long getHashKey() {
+        return hashKey;
+    }
+
+    /**
+     * @return the number of moves played since the first snapshot, so
+     * readers can tell whether the position changed since they last looked
+     */
+    public int getPly() {
+        return ply;
+    }
+}
@@ -1,13 +1,25 @@
 package model;
 
 /**
- * represents a 2D coordinate pair
+ * represents a 2D coordinate pair. There is exactly one instance per board
+ * square, obtained through of, so positions can be compared with ==.
  *
  * @author Joe
  */
 public class Position {
-    private int row;
-    private int col;
+    private static final int SIZE = 8;
+    private static final Position[] SQUARES = new Position[SIZE * SIZE];
+
+    static {
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                SQUARES[row * SIZE + col] = new Position(row, col);
+            }
+        }
+    }
+
+    private final int row;
+    private final int col;
 
     /**
      * Constructs a 2D pair
@@ -15,11 +27,27 @@ public class Position {
      * @param row
      * @param col
      */
-    public Position(int row, int col) {
+    private Position(int row, int col) {
         this.row = row;
         this.col = col;
     }
 
+    /**
+     * Returns the shared instance for a square
+     *
+     * @param row
+     * @param col
+     * @return the position at (row, col)
+     * @throws IllegalArgumentException if the square is off the board
+     */
+    public static Position of(int row, int col) {
+        if (row < 0 || row >= SIZE || col < 0 || col >= SIZE) {
+            throw new IllegalArgumentException(
+                "No such square: (" + row + ", " + col + ")");
+        }
+        return SQUARES[row * SIZE + col];
+    }
+
     /**
      *
      * @return the row
@@ -0,0 +1,14 @@
+package model;
+
+/**
+ * Whether a side can move, and if not, why the game is over
+ */
+public enum SideStatus {
+    CAN_MOVE,
+    CHECKMATED,
+    STALEMATED;
+
+    public boolean hasNoMoves() {
+        return this != CAN_MOVE;
+    }
+}
@@ -16,21 +16,12 @@ public class Bishop extends ChessPiece {
     @Override
     public Set<Move> generateMoves(Position curPos) {
         Set<Move> moves = new HashSet<Move>();
-        int curCol = curPos.getCol();
-        int curRow = curPos.getRow();
+        long targets = Bitboards.bishopAttacks(Bitboards.square(curPos), 0L);
 
-        for (int dx = -1; dx <= 1; dx += 2) {
-            for (int dy = -1; dy <= 1; dy += 2) {
-                int destCol = curCol + dx;
-                int destRow = curRow + dy;
-                while (ChessUtils.posBoundsTest(destRow, destCol)) {
-                    Position destPos = new Position(destRow, destCol);
-                    moves.add(new Move(curPos, destPos));
-
-                    destCol = destCol + dx;
-                    destRow = destRow + dy;
-                }
-            }
+        for (; targets != 0; targets &= targets - 1) {
+            Position destPos =
+                Bitboards.position(Long.numberOfTrailingZeros(targets));
+            moves.add(new Move(curPos, destPos));
         }
         return moves;
     }
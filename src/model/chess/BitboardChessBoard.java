@@ -0,0 +1,1200 @@
+package model.chess;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import model.Board;
+import model.Move;
+import model.Piece;
+import model.PieceType;
+import model.Position;
+import model.Side;
+
+/**
+ * Stateful chess board backed by one 64-bit bitboard per piece type and side
+ * plus occupancy masks. The Piece objects themselves are kept in a 64 entry
+ * mailbox so callers see the same instances across moves, exactly as they do
+ * with ChessBoard.
+ *
+ * Square indexes follow Bitboards: row * 8 + col.
+ */
+public class BitboardChessBoard implements Board {
+
+    private static final int PAWN = ChessPiece.ChessPieceType.PAWN.ordinal();
+    private static final int ROOK = ChessPiece.ChessPieceType.ROOK.ordinal();
+    private static final int KNIGHT =
+        ChessPiece.ChessPieceType.KNIGHT.ordinal();
+    private static final int BISHOP =
+        ChessPiece.ChessPieceType.BISHOP.ordinal();
+    private static final int QUEEN = ChessPiece.ChessPieceType.QUEEN.ordinal();
+    private static final int KING = ChessPiece.ChessPieceType.KING.ordinal();
+
+    /**
+     * Kinds of move for generateLegalMoves to produce, combined with |.
+     * Promotions are counted as promotions whether they capture or not.
+     */
+    public static final int CAPTURES = 1;
+    public static final int PROMOTIONS = 2;
+    public static final int QUIETS = 4;
+    public static final int ALL_MOVES = CAPTURES | PROMOTIONS | QUIETS;
+
+    private static final long PROMOTION_ROWS = 0xFF000000000000FFL;
+    private static final long FILE_A = 0x0101010101010101L;
+    private static final long FILE_H = 0x8080808080808080L;
+    // where single pushes from the starting rows land
+    private static final long ROW_2 = 0xFFL << 16;
+    private static final long ROW_5 = 0xFFL << 40;
+
+    // Side.values() copies its array on every call
+    private static final Side[] SIDES = Side.values();
+
+    /**
+     * Castling rights that survive a move touching each square: moving the
+     * king or a rook from its home square, or capturing on a rook's home
+     * square, clears the matching rights
+     */
+    private static final int[] CASTLING_MASK = new int[64];
+
+    static {
+        for (int sq = 0; sq < 64; sq++) {
+            CASTLING_MASK[sq] = 15;
+        }
+        for (Side side : Side.values()) {
+            int us = side.ordinal();
+            int backRow = side.getBackRow();
+            CASTLING_MASK[Bitboards.square(backRow, 4)] &=
+                ~(castlingBit(us, true) | castlingBit(us, false));
+            CASTLING_MASK[Bitboards.square(backRow, 7)] &=
+                ~castlingBit(us, true);
+            CASTLING_MASK[Bitboards.square(backRow, 0)] &=
+                ~castlingBit(us, false);
+        }
+    }
+
+    private long[][] pieces;
+    private long[] occupancy;
+    private long occupied;
+    private Piece[] squares;
+
+    // castling rights as bits: see castlingBit
+    private int castlingRights;
+
+    // square a pawn capturing en passant would land on, -1 if there is none
+    private int enPassantSquare;
+
+    // ordinal of the side to move, and the Zobrist key including it
+    private int sideToMove;
+    private long hashKey;
+
+    // sums of PieceSquareTables values per side, kept as pieces come and go
+    private int[] material;
+    private int[] pieceSquareScores;
+
+    // moves since the last capture or pawn move, counted per side, and the
+    // number of the move being played, counted in pairs as in FEN
+    private int halfmoveClock;
+    private int fullmoveNumber;
+
+    // filled by findChecksAndPins for the side whose moves are generated
+    private int kingSquare;
+    private long checkers;
+    private long pinned;
+
+    private Undo[] undoStack;
+    private int undoSize;
+
+    // keys of the positions before each move, for finding repetitions
+    private PositionHistory history;
+
+    private final int[] exchangeGains = new int[StaticExchange.MAX_CAPTURES];
+
+    //creates a chess board with all pieces in the right place
+    public BitboardChessBoard() {
+        pieces = new long[2][ChessPiece.ChessPieceType.values().length];
+        occupancy = new long[2];
+        squares = new Piece[64];
+        material = new int[2];
+        pieceSquareScores = new int[2];
+        castlingRights = 15;
+        enPassantSquare = -1;
+        fullmoveNumber = 1;
+        undoStack = new Undo[16];
+        history = new PositionHistory();
+        hashKey = Zobrist.castlingRights(castlingRights);
+
+        for (Side side : Side.values()) {
+            int frontRow = side.getFrontRow();
+            int backRow = side.getBackRow();
+
+            for (int i = 0; i < 8; i++) {
+                placePiece(new Pawn(side), Bitboards.square(frontRow, i));
+            }
+
+            placePiece(new Rook(side), Bitboards.square(backRow, 0));
+            placePiece(new Rook(side), Bitboards.square(backRow, 7));
+            placePiece(new Knight(side), Bitboards.square(backRow, 1));
+            placePiece(new Knight(side), Bitboards.square(backRow, 6));
+            placePiece(new Bishop(side), Bitboards.square(backRow, 2));
+            placePiece(new Bishop(side), Bitboards.square(backRow, 5));
+            placePiece(new Queen(side), Bitboards.square(backRow, 3));
+            placePiece(new King(side), Bitboards.square(backRow, 4));
+        }
+    }
+
+    /**
+     * Creates a copy of b for a search or perft task on another thread. The
+     * bitboards and running scores are cloned, while the Piece instances,
+     * which carry no state, are shared. The undo stack starts empty, so
+     * moves made on b cannot be unmade on the copy, but the keys of the
+     * positions b went through are copied and still count as repetitions.
+     *
+     * @param b the board to copy
+     */
+    public BitboardChessBoard(BitboardChessBoard b) {
+        pieces = new long[][] {b.pieces[0].clone(), b.pieces[1].clone()};
+        occupancy = b.occupancy.clone();
+        occupied = b.occupied;
+        squares = b.squares.clone();
+        material = b.material.clone();
+        pieceSquareScores = b.pieceSquareScores.clone();
+        castlingRights = b.castlingRights;
+        enPassantSquare = b.enPassantSquare;
+        sideToMove = b.sideToMove;
+        hashKey = b.hashKey;
+        halfmoveClock = b.halfmoveClock;
+        fullmoveNumber = b.fullmoveNumber;
+        undoStack = new Undo[16];
+        history = new PositionHistory(b.history);
+    }
+
+    /**
+     * Creates a board in the same position as b, for instance to search a
+     * game played on a ChessBoard. Like the copy constructor, it remembers
+     * the positions b went through but cannot take back moves made on b.
+     *
+     * @param b the board to copy
+     */
+    public BitboardChessBoard(ChessBoard b) {
+        this(placementOf(b), b.getSideToMove(), b.getCastlingRights(),
+                b.getEnPassantSquare(), b.getHalfmoveClock(),
+                b.getFullmoveNumber());
+        history = b.copyHistory();
+    }
+
+    private static Piece[] placementOf(Board b) {
+        Piece[] placement = new Piece[64];
+        for (int sq = 0; sq < 64; sq++) {
+            placement[sq] = b.getPieceAt(Bitboards.position(sq));
+        }
+        return placement;
+    }
+
+    /**
+     * Creates a board holding an arbitrary position, as read by Fen
+     *
+     * @see #setPosition
+     */
+    BitboardChessBoard(Piece[] placement, Side sideToMove, int castlingRights,
+            int enPassantSquare, int halfmoveClock, int fullmoveNumber) {
+        pieces = new long[2][ChessPiece.ChessPieceType.values().length];
+        occupancy = new long[2];
+        squares = new Piece[64];
+        material = new int[2];
+        pieceSquareScores = new int[2];
+        undoStack = new Undo[16];
+        history = new PositionHistory();
+        setPosition(placement, sideToMove, castlingRights, enPassantSquare,
+                halfmoveClock, fullmoveNumber);
+    }
+
+    /**
+     * Replaces the position on this board, dropping its history, so one
+     * board can be reused for many positions read in bulk
+     *
+     * @param placement the piece on each square, indexed as in Bitboards
+     * @param sideToMove the side whose turn it is
+     * @param castlingRights rights still held, as bits from castlingBit
+     * @param enPassantSquare square a pawn capturing en passant would land
+     * on, or -1
+     * @param halfmoveClock moves since the last capture or pawn move
+     * @param fullmoveNumber number of the move being played
+     */
+    void setPosition(Piece[] placement, Side sideToMove, int castlingRights,
+            int enPassantSquare, int halfmoveClock, int fullmoveNumber) {
+        for (long[] b : pieces) {
+            Arrays.fill(b, 0L);
+        }
+        Arrays.fill(occupancy, 0L);
+        Arrays.fill(squares, null);
+        Arrays.fill(material, 0);
+        Arrays.fill(pieceSquareScores, 0);
+        occupied = 0L;
+        hashKey = 0L;
+        this.castlingRights = 0;
+        undoSize = 0;
+        history.clear();
+
+        for (int sq = 0; sq < 64; sq++) {
+            if (placement[sq] != null) {
+                placePiece(placement[sq], sq);
+            }
+        }
+        setCastlingRights(castlingRights);
+        this.enPassantSquare = enPassantSquare;
+        hashKey ^= enPassantKey();
+        this.sideToMove = sideToMove.ordinal();
+        if (sideToMove == Side.BLACK) {
+            hashKey ^= Zobrist.SIDE;
+        }
+        this.halfmoveClock = halfmoveClock;
+        this.fullmoveNumber = fullmoveNumber;
+    }
+
+    @Override
+    public void movePiece(Piece p, Move m) {
+        int from = Bitboards.square(m.getStart());
+        int to = Bitboards.square(m.getDestination());
+
+        // the rook half of a castling move leaves the turn alone
+        boolean takesTurn = p.getSide().ordinal() == sideToMove;
+        if (takesTurn) {
+            history.push(hashKey);
+        }
+        hashKey ^= enPassantKey();
+        setCastlingRights(
+            castlingRights & CASTLING_MASK[from] & CASTLING_MASK[to]);
+
+        int captureSquare = to;
+        if (typeOf(p) == PAWN && to == enPassantSquare) {
+            captureSquare = enPassantCaptureSquare();
+        }
+        boolean resetsClock =
+            typeOf(p) == PAWN || squares[captureSquare] != null;
+
+        //kill a piece
+        if (squares[captureSquare] != null) {
+            removePiece(captureSquare);
+        }
+
+        //move p
+        removePiece(from);
+        placePiece(p, to);
+
+        if (typeOf(p) == PAWN
+                && Math.abs(Bitboards.row(to) - Bitboards.row(from)) == 2) {
+            enPassantSquare = (from + to) / 2;
+        } else {
+            enPassantSquare = -1;
+        }
+        hashKey ^= enPassantKey();
+
+        if (takesTurn) {
+            halfmoveClock = resetsClock ? 0 : halfmoveClock + 1;
+            if (p.getSide() == Side.BLACK) {
+                fullmoveNumber++;
+            }
+            sideToMove = 1 - sideToMove;
+            hashKey ^= Zobrist.SIDE;
+        }
+    }
+
+    @Override
+    public Map<Piece, Set<Move>> generateMovesForSide(Side s) {
+        MoveList legal = new MoveList();
+        generateLegalMoves(s, legal);
+
+        Map<Piece, Set<Move>> allMoves = new HashMap<>();
+        for (long own = occupancy[s.ordinal()]; own != 0; own &= own - 1) {
+            allMoves.put(squares[Long.numberOfTrailingZeros(own)],
+                    new HashSet<>());
+        }
+
+        for (int i = 0; i < legal.size(); i++) {
+            int move = legal.get(i);
+            // the controller asks for the promotion piece later, so offer a
+            // single promotion move per destination with no piece chosen
+            if (PackedMove.isPromotion(move)
+                    && PackedMove.promotionType(move)
+                        != ChessPiece.ChessPieceType.QUEEN) {
+                continue;
+            }
+            Move m = toMove(move);
+            if (m instanceof PromotionMove) {
+                ((PromotionMove) m).setPromotingTo(null);
+            }
+            allMoves.get(squares[PackedMove.from(move)]).add(m);
+        }
+
+        return allMoves;
+    }
+
+    /**
+     * Counts the legal moves of side s from the target masks of its pieces,
+     * without building any moves. Each promotion counts once for every
+     * piece the pawn can become, as in perft.
+     *
+     * @param s Side in question
+     * @return the number of legal moves
+     */
+    public int countLegalMoves(Side s) {
+        return countLegalMoves(s.ordinal(), false);
+    }
+
+    /**
+     * Answers if side s has any legal move, stopping at the first piece
+     * that has one
+     *
+     * @param s Side in question
+     */
+    public boolean hasLegalMove(Side s) {
+        return countLegalMoves(s.ordinal(), true) != 0;
+    }
+
+    private int countLegalMoves(int us, boolean firstOnly) {
+        findChecksAndPins(us);
+        int count = 0;
+        long own = occupancy[us];
+
+        // pawns that are not pinned are counted all at once by shifting the
+        // whole set; pinned pawns and en passant go through legalTargets
+        if (Long.bitCount(checkers) < 2) {
+            long free = pieces[us][PAWN] & ~pinned;
+            count = countPawnMoves(us, free);
+            own &= ~free;
+            long enPassant = enPassantMask(us);
+            if (enPassant != 0) {
+                long capturers = Bitboards.PAWN_ATTACKS[1 - us][
+                    enPassantSquare] & free;
+                for (; capturers != 0; capturers &= capturers - 1) {
+                    int from = Long.numberOfTrailingZeros(capturers);
+                    if ((legalTargets(from, PAWN, us) & enPassant) != 0) {
+                        count++;
+                    }
+                }
+            }
+        }
+
+        // castling is never the only legal move: when it is allowed, so is
+        // the king's step onto the square it passes
+        for (; own != 0 && !(firstOnly && count != 0); own &= own - 1) {
+            int from = Long.numberOfTrailingZeros(own);
+            int type = typeOf(squares[from]);
+            long targets = legalTargets(from, type, us);
+            count += type == PAWN
+                ? withPromotions(targets) : Long.bitCount(targets);
+        }
+        if (firstOnly || checkers != 0) {
+            return count;
+        }
+
+        if (canCastle(us, true)) {
+            count++;
+        }
+        if (canCastle(us, false)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Counts the pushes and captures, but not en passant, of the unpinned
+     * pawns of side us. Needs findChecksAndPins to have found at most one
+     * checker.
+     */
+    private int countPawnMoves(int us, long pawns) {
+        long mask = ~0L;
+        if (checkers != 0) {
+            mask = checkers
+                | Bitboards.BETWEEN[kingSquare][Long.numberOfTrailingZeros(
+                    checkers)];
+        }
+        long empty = ~occupied;
+        long enemies = occupancy[1 - us] & mask;
+
+        long single, doubles, left, right;
+        if (us == Side.WHITE.ordinal()) {
+            single = (pawns >>> 8) & empty;
+            doubles = ((single & ROW_5) >>> 8) & empty;
+            left = (pawns & ~FILE_A) >>> 9;
+            right = (pawns & ~FILE_H) >>> 7;
+        } else {
+            single = (pawns << 8) & empty;
+            doubles = ((single & ROW_2) << 8) & empty;
+            left = (pawns & ~FILE_A) << 7;
+            right = (pawns & ~FILE_H) << 9;
+        }
+        return withPromotions(single & mask) + Long.bitCount(doubles & mask)
+            + withPromotions(left & enemies) + withPromotions(right & enemies);
+    }
+
+    // a pawn reaching the last row has four moves there, one per piece
+    private static int withPromotions(long targets) {
+        return Long.bitCount(targets)
+            + 3 * Long.bitCount(targets & PROMOTION_ROWS);
+    }
+
+    /**
+     * Appends every legal move for side s to moves as PackedMove ints. Nothing
+     * is allocated, so search and perft can call this at every node with a
+     * MoveList per ply, for instance from MoveArena.
+     *
+     * @param s Side in question
+     * @param moves the list to append to
+     */
+    public void generateLegalMoves(Side s, MoveList moves) {
+        generateLegalMoves(s, moves, ALL_MOVES);
+    }
+
+    /**
+     * Appends the legal moves of the given kinds for side s to moves, so a
+     * search can generate captures first and quiet moves only if it still
+     * needs them
+     *
+     * @param s Side in question
+     * @param moves the list to append to
+     * @param kinds CAPTURES, PROMOTIONS and QUIETS combined with |
+     */
+    public void generateLegalMoves(Side s, MoveList moves, int kinds) {
+        int us = s.ordinal();
+        findChecksAndPins(us);
+
+        // the en passant square only counts as a capture for pawns
+        long wanted = 0L;
+        long pawnWanted = 0L;
+        if ((kinds & CAPTURES) != 0) {
+            wanted |= occupancy[1 - us];
+            pawnWanted |= occupancy[1 - us] | enPassantMask(us);
+        }
+        if ((kinds & QUIETS) != 0) {
+            wanted |= ~occupancy[1 - us];
+            pawnWanted |= ~occupancy[1 - us] & ~enPassantMask(us);
+        }
+
+        for (long own = occupancy[us]; own != 0; own &= own - 1) {
+            int from = Long.numberOfTrailingZeros(own);
+            int type = typeOf(squares[from]);
+            long targets = legalTargets(from, type, us);
+            if (type == PAWN) {
+                targets = (targets & ~PROMOTION_ROWS & pawnWanted)
+                    | ((kinds & PROMOTIONS) != 0
+                        ? targets & PROMOTION_ROWS : 0L);
+            } else {
+                targets &= wanted;
+            }
+
+            for (; targets != 0; targets &= targets - 1) {
+                int to = Long.numberOfTrailingZeros(targets);
+                addMoves(from, to, type, moves);
+            }
+        }
+
+        if (checkers == 0 && (kinds & QUIETS) != 0) {
+            if (canCastle(us, true)) {
+                moves.add(PackedMove.of(kingSquare, kingSquare + 2,
+                        PackedMove.KING_CASTLE));
+            }
+            if (canCastle(us, false)) {
+                moves.add(PackedMove.of(kingSquare, kingSquare - 2,
+                        PackedMove.QUEEN_CASTLE));
+            }
+        }
+    }
+
+    /**
+     * Static exchange evaluation of move: the material it wins for the side
+     * making it, or loses if negative, once both sides have made every
+     * capture and recapture on its destination that pays. Nothing is played
+     * on the board.
+     *
+     * @param move a legal move in this position
+     * @return the expected gain in PieceSquareTables units
+     */
+    public int see(int move) {
+        if (PackedMove.isCastle(move)) {
+            return 0;
+        }
+        int to = PackedMove.to(move);
+        return StaticExchange.see(pieces, PackedMove.from(move), to,
+                PackedMove.flags(move) == PackedMove.EN_PASSANT
+                    ? enPassantCaptureSquare() : to,
+                PackedMove.isPromotion(move)
+                    ? PackedMove.promotionType(move).ordinal() : -1,
+                exchangeGains);
+    }
+
+    @Override
+    public int see(Move m) {
+        return see(encode(m));
+    }
+
+    /**
+     * The material move takes off the board, plus what a promotion gains
+     * over the pawn, before any recapture: the most it can win
+     *
+     * @param move a legal move in this position
+     * @return the gain in PieceSquareTables units
+     */
+    public int materialGain(int move) {
+        int gain = 0;
+        if (PackedMove.flags(move) == PackedMove.EN_PASSANT) {
+            gain = PieceSquareTables.material(PAWN);
+        } else if (PackedMove.isCapture(move)) {
+            gain = PieceSquareTables.material(typeAt(PackedMove.to(move)));
+        }
+        if (PackedMove.isPromotion(move)) {
+            gain += PieceSquareTables.material(
+                    PackedMove.promotionType(move).ordinal())
+                - PieceSquareTables.material(PAWN);
+        }
+        return gain;
+    }
+
+    /**
+     * Answers if move can be played by the side to move in the current
+     * position, flags included. Used to check moves remembered from other
+     * positions, such as hash and killer moves, before playing them.
+     */
+    public boolean isLegal(int move) {
+        if (move == PackedMove.NONE) {
+            return false;
+        }
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        Piece mover = squares[from];
+        if (mover == null || mover.getSide().ordinal() != sideToMove) {
+            return false;
+        }
+
+        int type = typeOf(mover);
+        findChecksAndPins(sideToMove);
+        if (PackedMove.isCastle(move)) {
+            return type == KING && checkers == 0
+                && to == kingSquare + (PackedMove.flags(move)
+                    == PackedMove.KING_CASTLE ? 2 : -2)
+                && canCastle(sideToMove,
+                    PackedMove.flags(move) == PackedMove.KING_CASTLE);
+        }
+        if ((legalTargets(from, type, sideToMove) & (1L << to)) == 0) {
+            return false;
+        }
+
+        int flags = flagsFor(from, to, type);
+        return PackedMove.isPromotion(move)
+            ? (PackedMove.flags(move) & ~3) == flags
+            : PackedMove.flags(move) == flags;
+    }
+
+    /**
+     * @return the type ordinal of the piece on square, or -1 if it is empty
+     */
+    int typeAt(int square) {
+        return squares[square] == null ? -1 : typeOf(squares[square]);
+    }
+
+    /**
+     * Plays a complete move in place, including the castling rook and the
+     * promotion piece. Every call must be paired with a later unmakeMove.
+     *
+     * @param move a legal PackedMove for the current position
+     */
+    public void makeMove(int move) {
+        if (undoSize == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoSize * 2);
+        }
+        if (undoStack[undoSize] == null) {
+            undoStack[undoSize] = new Undo();
+        }
+        Undo u = undoStack[undoSize++];
+        history.push(hashKey);
+
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int flags = PackedMove.flags(move);
+        Piece mover = squares[from];
+
+        u.move = move;
+        u.castlingRights = castlingRights;
+        u.enPassantSquare = enPassantSquare;
+        u.hashKey = hashKey;
+        u.halfmoveClock = halfmoveClock;
+        u.capturedSquare = flags == PackedMove.EN_PASSANT
+            ? enPassantCaptureSquare() : to;
+        u.captured = squares[u.capturedSquare];
+
+        // the en passant key depends on the pawns around the square, so it
+        // has to come out before any of them move
+        hashKey ^= enPassantKey();
+        if (u.captured != null) {
+            removePiece(u.capturedSquare);
+        }
+        removePiece(from);
+        placePiece(mover, to);
+
+        if (flags == PackedMove.KING_CASTLE) {
+            shiftPiece(to + 1, to - 1);
+        } else if (flags == PackedMove.QUEEN_CASTLE) {
+            shiftPiece(to - 2, to + 1);
+        } else if (PackedMove.isPromotion(move)) {
+            ChessPiece.ChessPieceType type = PackedMove.promotionType(move);
+            Piece promoted = u.spare;
+            if (promoted == null || promoted.getType() != type
+                    || promoted.getSide() != mover.getSide()) {
+                promoted = ChessUtils.getPieceOfType(type, mover.getSide());
+            }
+            u.spare = null;
+            removePiece(to);
+            placePiece(promoted, to);
+            u.pawn = mover;
+        }
+
+        setCastlingRights(
+            castlingRights & CASTLING_MASK[from] & CASTLING_MASK[to]);
+        enPassantSquare = flags == PackedMove.DOUBLE_PAWN_PUSH
+            ? (from + to) / 2 : -1;
+        hashKey ^= enPassantKey() ^ Zobrist.SIDE;
+        sideToMove = 1 - mover.getSide().ordinal();
+        halfmoveClock = u.captured != null || typeOf(mover) == PAWN
+            ? 0 : halfmoveClock + 1;
+        if (mover.getSide() == Side.BLACK) {
+            fullmoveNumber++;
+        }
+    }
+
+    /**
+     * Takes back the most recent makeMove(int)
+     */
+    public void unmakeMove() {
+        Undo u = undoStack[--undoSize];
+        history.pop();
+        int from = PackedMove.from(u.move);
+        int to = PackedMove.to(u.move);
+        int flags = PackedMove.flags(u.move);
+
+        if (PackedMove.isPromotion(u.move)) {
+            // keep the promoted piece around for the next promotion made
+            // from this depth
+            u.spare = squares[to];
+            removePiece(to);
+            placePiece(u.pawn, from);
+            u.pawn = null;
+        } else {
+            shiftPiece(to, from);
+        }
+
+        if (flags == PackedMove.KING_CASTLE) {
+            shiftPiece(to - 1, to + 1);
+        } else if (flags == PackedMove.QUEEN_CASTLE) {
+            shiftPiece(to + 1, to - 2);
+        }
+
+        if (u.captured != null) {
+            placePiece(u.captured, u.capturedSquare);
+            u.captured = null;
+        }
+
+        castlingRights = u.castlingRights;
+        enPassantSquare = u.enPassantSquare;
+        hashKey = u.hashKey;
+        halfmoveClock = u.halfmoveClock;
+        sideToMove = squares[from].getSide().ordinal();
+        if (sideToMove == Side.BLACK.ordinal()) {
+            fullmoveNumber--;
+        }
+    }
+
+    /**
+     * Converts a PackedMove for the current position into the Move subclass
+     * the rest of the game uses: CastlingMove, PromotionMove with its piece
+     * chosen, PawnCaptureMove with en passant filled in, or a plain Move.
+     */
+    public Move toMove(int move) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int flags = PackedMove.flags(move);
+
+        if (flags == PackedMove.KING_CASTLE
+                || flags == PackedMove.QUEEN_CASTLE) {
+            return new CastlingMove(Bitboards.position(from),
+                    Bitboards.position(to),
+                    flags == PackedMove.KING_CASTLE
+                        ? CastlingMove.CastlingType.KING_SIDE
+                        : CastlingMove.CastlingType.QUEEN_SIDE);
+        }
+
+        Move m = createMove(from, to, typeOf(squares[from]));
+        if (m instanceof PromotionMove) {
+            ((PromotionMove) m).setPromotingTo(
+                PackedMove.promotionType(move));
+        }
+        return m;
+    }
+
+    /**
+     * Packs a Move for the current position. A PromotionMove with no piece
+     * chosen yet is taken to promote to a queen.
+     */
+    public int encode(Move m) {
+        int from = Bitboards.square(m.getStart());
+        int to = Bitboards.square(m.getDestination());
+        int type = typeOf(squares[from]);
+        boolean capture = squares[to] != null;
+
+        if (type == KING && to - from == 2) {
+            return PackedMove.of(from, to, PackedMove.KING_CASTLE);
+        } else if (type == KING && from - to == 2) {
+            return PackedMove.of(from, to, PackedMove.QUEEN_CASTLE);
+        } else if (type == PAWN && to == enPassantSquare) {
+            return PackedMove.of(from, to, PackedMove.EN_PASSANT);
+        } else if (type == PAWN
+                && (Bitboards.row(to) == 0 || Bitboards.row(to) == 7)) {
+            PieceType promotingTo = m instanceof PromotionMove
+                ? ((PromotionMove) m).getPromotingTo() : null;
+            return PackedMove.promotion(from, to, capture,
+                    promotingTo == null
+                        ? ChessPiece.ChessPieceType.QUEEN : promotingTo);
+        } else if (type == PAWN && Math.abs(to - from) == 16) {
+            return PackedMove.of(from, to, PackedMove.DOUBLE_PAWN_PUSH);
+        }
+        return PackedMove.of(from, to,
+                capture ? PackedMove.CAPTURE : PackedMove.QUIET);
+    }
+
+    @Override
+    public boolean pieceCanMove(Move m, Side movingSide) {
+        int from = Bitboards.square(m.getStart());
+        int to = Bitboards.square(m.getDestination());
+        Piece mover = squares[from];
+
+        if (mover == null || mover.getSide() != movingSide) {
+            return false;
+        }
+
+        int us = movingSide.ordinal();
+        int type = typeOf(mover);
+
+        findChecksAndPins(us);
+        if (type == KING
+                && Math.abs(Bitboards.col(to) - Bitboards.col(from)) == 2) {
+            return checkers == 0 && canCastle(us, to > from);
+        }
+
+        if ((legalTargets(from, type, us) & (1L << to)) == 0) {
+            return false;
+        }
+
+        if (m instanceof PawnCaptureMove && type == PAWN
+                && to == enPassantSquare) {
+            PawnCaptureMove pcm = (PawnCaptureMove) m;
+            pcm.setIsEnPassant(true);
+            pcm.setEnPassantCapturePosition(
+                Bitboards.position(enPassantCaptureSquare()));
+        }
+        return true;
+    }
+
+    /**
+     * @return the side whose turn it is on this board
+     */
+    public Side getSideToMove() {
+        return SIDES[sideToMove];
+    }
+
+    @Override
+    public int getMaterial(Side s) {
+        return material[s.ordinal()];
+    }
+
+    @Override
+    public int getPieceSquareScore(Side s) {
+        return pieceSquareScores[s.ordinal()];
+    }
+
+    /**
+     * Answers if the current position came up before since the last capture
+     * or pawn move. A search can score it as a draw right away: whatever
+     * was best the first time is best again, so the game would go round.
+     * Usually answered without looking back through the history at all.
+     *
+     * @return true if the position is a repetition
+     */
+    public boolean isRepetition() {
+        return history.repetitions(hashKey, halfmoveClock, 1) > 0;
+    }
+
+    @Override
+    public int countRepetitions() {
+        return history.repetitions(hashKey, halfmoveClock, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the number of moves since the last capture or pawn move
+     */
+    @Override
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    /**
+     * @return the number of the move being played, starting at 1 and going
+     * up after each move by Black
+     */
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    // castling rights as bits from castlingBit, for Fen
+    int getCastlingRights() {
+        return castlingRights;
+    }
+
+    // square a pawn capturing en passant would land on, or -1, for Fen
+    int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    /**
+     * Returns the Zobrist key of the position, which matches the key
+     * ChessBoard gives the same position
+     *
+     * @return the 64-bit position key
+     */
+    @Override
+    public long getHashKey() {
+        return hashKey;
+    }
+
+    @Override
+    public Map<Piece, Position> getAllActivePiecesPositions() {
+        Map<Piece, Position> all = new HashMap<>();
+        for (long occ = occupied; occ != 0; occ &= occ - 1) {
+            int sq = Long.numberOfTrailingZeros(occ);
+            all.put(squares[sq], Bitboards.position(sq));
+        }
+        return all;
+    }
+
+    @Override
+    public boolean isInCheck(Side s) {
+        int us = s.ordinal();
+        int kingSquare = Long.numberOfTrailingZeros(pieces[us][KING]);
+        return attackersTo(kingSquare, 1 - us, occupied) != 0;
+    }
+
+    @Override
+    public Piece getPieceAt(Position p) {
+        return squares[Bitboards.square(p)];
+    }
+
+    @Override
+    public void replacePieceAt(Position pos, Piece newPiece) {
+        int sq = Bitboards.square(pos);
+        if (squares[sq] != null) {
+            removePiece(sq);
+        }
+        placePiece(newPiece, sq);
+    }
+
+    private void addMoves(int from, int to, int type, MoveList moves) {
+        int flags = flagsFor(from, to, type);
+        if (flags == PackedMove.PROMOTION
+                || flags == PackedMove.PROMOTION_CAPTURE) {
+            // queen first, as it is nearly always the best
+            for (int piece = 3; piece >= 0; piece--) {
+                moves.add(PackedMove.of(from, to, flags | piece));
+            }
+        } else {
+            moves.add(PackedMove.of(from, to, flags));
+        }
+    }
+
+    /**
+     * PackedMove flags for a non-castling move of a piece of type. For a
+     * promotion the piece bits are left at 0.
+     */
+    private int flagsFor(int from, int to, int type) {
+        boolean capture = squares[to] != null;
+        if (type == PAWN) {
+            if (Bitboards.row(to) == 0 || Bitboards.row(to) == 7) {
+                return capture
+                    ? PackedMove.PROMOTION_CAPTURE : PackedMove.PROMOTION;
+            } else if (to == enPassantSquare) {
+                return PackedMove.EN_PASSANT;
+            } else if (Math.abs(to - from) == 16) {
+                return PackedMove.DOUBLE_PAWN_PUSH;
+            }
+        }
+        return capture ? PackedMove.CAPTURE : PackedMove.QUIET;
+    }
+
+    /**
+     * Destinations for the piece on from, respecting blockers and captures
+     * but not whether the move leaves the own king in check. Castling is
+     * handled separately by canCastle.
+     */
+    private long pseudoLegalTargets(int from, int type, int us) {
+        long own = occupancy[us];
+        if (type == KNIGHT) {
+            return Bitboards.KNIGHT_ATTACKS[from] & ~own;
+        } else if (type == KING) {
+            return Bitboards.KING_ATTACKS[from] & ~own;
+        } else if (type == ROOK) {
+            return Bitboards.rookAttacks(from, occupied) & ~own;
+        } else if (type == BISHOP) {
+            return Bitboards.bishopAttacks(from, occupied) & ~own;
+        } else if (type == QUEEN) {
+            return Bitboards.queenAttacks(from, occupied) & ~own;
+        }
+
+        long targets = Bitboards.PAWN_ATTACKS[us][from]
+            & (occupancy[1 - us] | enPassantMask(us));
+        int forward = us == Side.WHITE.ordinal() ? -8 : 8;
+        int single = from + forward;
+        if ((occupied & (1L << single)) == 0) {
+            targets |= 1L << single;
+            int frontRow = SIDES[us].getFrontRow();
+            if (Bitboards.row(from) == frontRow
+                    && (occupied & (1L << (single + forward))) == 0) {
+                targets |= 1L << (single + forward);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * Works out, once per position, which enemy pieces give check to side us
+     * and which of our pieces are pinned against our king. legalTargets
+     * reads the result.
+     */
+    private void findChecksAndPins(int us) {
+        int them = 1 - us;
+        long[] enemy = pieces[them];
+        kingSquare = Long.numberOfTrailingZeros(pieces[us][KING]);
+        checkers = attackersTo(kingSquare, them, occupied);
+        pinned = 0L;
+
+        // enemy sliders that would see the king if our pieces were absent
+        long snipers = (Bitboards.rookAttacks(kingSquare, occupancy[them])
+                & (enemy[ROOK] | enemy[QUEEN]))
+            | (Bitboards.bishopAttacks(kingSquare, occupancy[them])
+                & (enemy[BISHOP] | enemy[QUEEN]));
+        for (; snipers != 0; snipers &= snipers - 1) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            long blockers = Bitboards.BETWEEN[kingSquare][sniper] & occupied;
+            if (Long.bitCount(blockers) == 1) {
+                pinned |= blockers & occupancy[us];
+            }
+        }
+    }
+
+    /**
+     * Legal destinations for the piece on from, using the checkers and pins
+     * found by findChecksAndPins. Castling is handled separately by
+     * canCastle.
+     */
+    private long legalTargets(int from, int type, int us) {
+        long targets = pseudoLegalTargets(from, type, us);
+
+        if (type == KING) {
+            // the king may not step onto an attacked square, and must not
+            // shield the square behind it from a slider it moves away from
+            long occ = occupied & ~(1L << from);
+            long safe = 0L;
+            for (; targets != 0; targets &= targets - 1) {
+                int to = Long.numberOfTrailingZeros(targets);
+                if (attackersTo(to, 1 - us, occ) == 0) {
+                    safe |= 1L << to;
+                }
+            }
+            return safe;
+        }
+
+        if (Long.bitCount(checkers) > 1) {
+            return 0L;
+        }
+
+        // with a single checker, capture it or block the line it checks on
+        long mask = ~0L;
+        if (checkers != 0) {
+            mask = checkers
+                | Bitboards.BETWEEN[kingSquare][Long.numberOfTrailingZeros(
+                    checkers)];
+        }
+        if ((pinned & (1L << from)) != 0) {
+            mask &= Bitboards.LINE[kingSquare][from];
+        }
+
+        long enPassant = type == PAWN ? targets & enPassantMask(us) : 0L;
+        targets &= mask & ~enPassant;
+
+        // en passant takes a pawn off a square the mask does not describe,
+        // and can clear two pieces off the king's row at once, so the
+        // resulting occupancy is tested directly
+        if (enPassant != 0) {
+            long captured = 1L << enPassantCaptureSquare();
+            long occ = (occupied & ~(1L << from) & ~captured) | enPassant;
+            if ((attackersTo(kingSquare, 1 - us, occ) & ~captured) == 0) {
+                targets |= enPassant;
+            }
+        }
+        return targets;
+    }
+
+    private boolean canCastle(int us, boolean kingside) {
+        if ((castlingRights & castlingBit(us, kingside)) == 0) {
+            return false;
+        }
+
+        int backRow = SIDES[us].getBackRow();
+        int kingSquare = Bitboards.square(backRow, 4);
+        int rookSquare = Bitboards.square(backRow, kingside ? 7 : 0);
+        if ((pieces[us][KING] & (1L << kingSquare)) == 0
+                || (pieces[us][ROOK] & (1L << rookSquare)) == 0) {
+            return false;
+        }
+
+        // every square between king and rook must be empty
+        if ((Bitboards.BETWEEN[kingSquare][rookSquare] & occupied) != 0) {
+            return false;
+        }
+
+        // the king may not pass through or land on an attacked square
+        int step = kingside ? 1 : -1;
+        return attackersTo(kingSquare + step, 1 - us, occupied) == 0
+            && attackersTo(kingSquare + 2 * step, 1 - us, occupied) == 0;
+    }
+
+    /**
+     * @return all pieces of side by that attack square given occupancy occ
+     */
+    private long attackersTo(int square, int by, long occ) {
+        long[] b = pieces[by];
+        return (Bitboards.KNIGHT_ATTACKS[square] & b[KNIGHT])
+            | (Bitboards.KING_ATTACKS[square] & b[KING])
+            | (Bitboards.PAWN_ATTACKS[1 - by][square] & b[PAWN])
+            | (Bitboards.rookAttacks(square, occ) & (b[ROOK] | b[QUEEN]))
+            | (Bitboards.bishopAttacks(square, occ)
+                & (b[BISHOP] | b[QUEEN]));
+    }
+
+    private long enPassantMask(int us) {
+        if (enPassantSquare < 0) {
+            return 0L;
+        }
+        long victim = 1L << enPassantCaptureSquare();
+        return (pieces[1 - us][PAWN] & victim) != 0
+            ? 1L << enPassantSquare : 0L;
+    }
+
+    // the pawn that just made the double step sits beside the capturer
+    private int enPassantCaptureSquare() {
+        return Bitboards.row(enPassantSquare) == 2
+            ? enPassantSquare + 8 : enPassantSquare - 8;
+    }
+
+    private Move createMove(int from, int to, int type) {
+        Position start = Bitboards.position(from);
+        Position dest = Bitboards.position(to);
+
+        if (type == KNIGHT) {
+            return new Move(start, dest, true);
+        } else if (type != PAWN) {
+            return new Move(start, dest);
+        }
+
+        boolean capture = Bitboards.col(from) != Bitboards.col(to);
+        if (Bitboards.row(to) == 0 || Bitboards.row(to) == 7) {
+            return new PromotionMove(start, dest, false, !capture, capture);
+        } else if (capture) {
+            PawnCaptureMove pcm = new PawnCaptureMove(start, dest, false,
+                    false, true);
+            if (to == enPassantSquare) {
+                pcm.setIsEnPassant(true);
+                pcm.setEnPassantCapturePosition(
+                    Bitboards.position(enPassantCaptureSquare()));
+            }
+            return pcm;
+        }
+        return new Move(start, dest, false, true, false);
+    }
+
+    private void placePiece(Piece p, int sq) {
+        long b = 1L << sq;
+        int side = p.getSide().ordinal();
+        int type = typeOf(p);
+        pieces[side][type] |= b;
+        occupancy[side] |= b;
+        occupied |= b;
+        squares[sq] = p;
+        hashKey ^= Zobrist.piece(p, sq);
+        material[side] += PieceSquareTables.material(type);
+        pieceSquareScores[side] += PieceSquareTables.square(type, side, sq);
+    }
+
+    private void removePiece(int sq) {
+        Piece p = squares[sq];
+        long b = ~(1L << sq);
+        int side = p.getSide().ordinal();
+        int type = typeOf(p);
+        pieces[side][type] &= b;
+        occupancy[side] &= b;
+        occupied &= b;
+        squares[sq] = null;
+        hashKey ^= Zobrist.piece(p, sq);
+        material[side] -= PieceSquareTables.material(type);
+        pieceSquareScores[side] -= PieceSquareTables.square(type, side, sq);
+    }
+
+    // moves whatever stands on from to the empty square to
+    private void shiftPiece(int from, int to) {
+        Piece p = squares[from];
+        removePiece(from);
+        placePiece(p, to);
+    }
+
+    private void setCastlingRights(int rights) {
+        hashKey ^= Zobrist.castlingRights(castlingRights ^ rights);
+        castlingRights = rights;
+    }
+
+    /**
+     * The en passant part of the hash key, which only counts the column when
+     * a pawn of the side to move can actually make the capture
+     */
+    private long enPassantKey() {
+        if (enPassantSquare < 0) {
+            return 0L;
+        }
+        // the capturer is the side that did not make the double step
+        int capturer = Bitboards.row(enPassantSquare) == 2
+            ? Side.WHITE.ordinal() : Side.BLACK.ordinal();
+        return (Bitboards.PAWN_ATTACKS[1 - capturer][enPassantSquare]
+                & pieces[capturer][PAWN]) != 0
+            ? Zobrist.enPassant(Bitboards.col(enPassantSquare)) : 0L;
+    }
+
+    static int castlingBit(int side, boolean kingside) {
+        return 1 << (side * 2 + (kingside ? 0 : 1));
+    }
+
+    private static int typeOf(Piece p) {
+        return ((ChessPiece.ChessPieceType) p.getType()).ordinal();
+    }
+
+    /**
+     * Everything makeMove(int) changes that unmakeMove cannot work out again
+     * from the move itself. Records are reused between moves.
+     */
+    private static class Undo {
+        private int move;
+        private int castlingRights;
+        private int enPassantSquare;
+        private long hashKey;
+        private int halfmoveClock;
+        private Piece captured;
+        private int capturedSquare;
+        private Piece pawn;
+        private Piece spare;
+    }
+}
@@ -0,0 +1,257 @@
+package model.chess;
+
+import model.Position;
+import model.Side;
+
+/**
+ * Constants and helpers for 64-bit square sets. Square index is
+ * row * 8 + col, so bit 0 is (0, 0) on Black's back row and bit 63 is (7, 7)
+ * on White's back row.
+ */
+public class Bitboards {
+
+    public static final long[] KNIGHT_ATTACKS = new long[64];
+    public static final long[] KING_ATTACKS = new long[64];
+
+    /**
+     * Squares attacked by a pawn, indexed by [side.ordinal()][square]
+     */
+    public static final long[][] PAWN_ATTACKS = new long[2][64];
+
+    /**
+     * Squares strictly between two squares on a common row, column or
+     * diagonal, or 0 if the squares are not aligned
+     */
+    public static final long[][] BETWEEN = new long[64][64];
+
+    /**
+     * The whole board line through two aligned squares, or 0 if the squares
+     * are not aligned
+     */
+    public static final long[][] LINE = new long[64][64];
+
+    private static final int[][] ROOK_DIRECTIONS =
+        {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+    private static final int[][] BISHOP_DIRECTIONS =
+        {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+
+    // magic multipliers for the square numbering above, found offline by
+    // random search so that no two occupancies with different attack sets
+    // share a table slot
+    private static final long[] ROOK_MAGICS = {
+        0x4080004000102084L, 0x00C0400030002000L, 0x0200088200104020L,
+        0x1100100020080500L, 0x09800A0800040080L, 0x0E00920008100400L,
+        0x24000D021001A804L, 0x008000290002C480L, 0x0200800080400021L,
+        0xA042002048810A00L, 0x8001801001200080L, 0x0200800800801000L,
+        0x1821000801001005L, 0x5000800200800400L, 0x868F000200310004L,
+        0x040A001649008204L, 0x4080004020004002L, 0x8010004000402004L,
+        0x0000848010042000L, 0x0050808010000801L, 0x0081808004030800L,
+        0xA080080110200440L, 0x0808808001000200L, 0x00011A0000804401L,
+        0x0800400880008022L, 0x0000400100208108L, 0x00101103002002C2L,
+        0x0086022200110840L, 0x8820040080080082L, 0x000C008080020004L,
+        0x2000010400428810L, 0x0000208200004104L, 0x8080002000404000L,
+        0x2490002004404000L, 0x0001002001001042L, 0x00C1000823001001L,
+        0x2481000801001004L, 0x0102000406003008L, 0x000010120C002908L,
+        0x1006204106000484L, 0x0082410180030020L, 0x0800C02010014000L,
+        0x2002008010420020L, 0x0408005000828048L, 0x0E00080100050010L,
+        0x3280040002008080L, 0x0880089042040001L, 0x00004484004A0001L,
+        0x0000210040860600L, 0x01C10040102A8100L, 0x0800802000100080L,
+        0x0098100008008080L, 0x0318000500081100L, 0x0800040080020080L,
+        0x0087000402000100L, 0x00010021420C8100L, 0xC081401480042301L,
+        0x0008811340010221L, 0x2800801008422202L, 0x0004204110060602L,
+        0x210200C820101432L, 0x0001000814000203L, 0x00A4021001080084L,
+        0x0002110402822846L
+    };
+
+    private static final long[] BISHOP_MAGICS = {
+        0x0018121002002D06L, 0x1C08D10102020000L, 0x20A1120400402900L,
+        0x000C404188000090L, 0x000111402001A0A0L, 0x0401010840000000L,
+        0x840082082004000AL, 0x0C06008048088401L, 0x0500045010820080L,
+        0x20A00810011A0022L, 0x0000100B11411004L, 0x6000082084201010L,
+        0x0006111040213020L, 0xA200009010080000L, 0x0410084208200802L,
+        0x031528484404202CL, 0x22C04010040800C0L, 0x0110000210010D14L,
+        0x0120404409040010L, 0x8888000222024004L, 0x0009022190400408L,
+        0x01020042C8040420L, 0x800C000100821080L, 0x082020230C0A0204L,
+        0x4004842820204400L, 0x81080800A0022084L, 0x4208080310444040L,
+        0x4004100908008010L, 0x8001001001004020L, 0x0810010008209801L,
+        0x0048060400610444L, 0x4102002101440E40L, 0x0004200400A32402L,
+        0x2280820800208800L, 0x00DC00C410280268L, 0x0002020084080080L,
+        0x0104004010040101L, 0x82200403000460B0L, 0x0541082900020100L,
+        0x0400840088004202L, 0x0C84108484101002L, 0x341A08010882BD03L,
+        0x1010160101011000L, 0x000200C010402202L, 0x002098010400C240L,
+        0x0060200088801108L, 0x0089080808400080L, 0x2010922202401422L,
+        0x0007280222601881L, 0x2010940401040409L, 0x46000200844421C0L,
+        0x0808023084044000L, 0x6102044010410020L, 0x021130E01800C0AAL,
+        0x0008489014004248L, 0x0A202800830E4201L, 0x0321008820921000L,
+        0x2002004208092800L, 0x0008D00200420841L, 0x0210281824420883L,
+        0x4000100021220480L, 0xC000000890815201L, 0x0000101110008080L,
+        0x0050110104040044L
+    };
+
+    private static final long[] ROOK_MASKS = new long[64];
+    private static final long[] BISHOP_MASKS = new long[64];
+    private static final int[] ROOK_SHIFTS = new int[64];
+    private static final int[] BISHOP_SHIFTS = new int[64];
+    private static final int[] ROOK_OFFSETS = new int[64];
+    private static final int[] BISHOP_OFFSETS = new int[64];
+    private static final long[] ROOK_TABLE;
+    private static final long[] BISHOP_TABLE;
+
+    static {
+        ROOK_TABLE = new long[initSlider(ROOK_DIRECTIONS, ROOK_MAGICS,
+                ROOK_MASKS, ROOK_SHIFTS, ROOK_OFFSETS, null)];
+        initSlider(ROOK_DIRECTIONS, ROOK_MAGICS, ROOK_MASKS, ROOK_SHIFTS,
+                ROOK_OFFSETS, ROOK_TABLE);
+        BISHOP_TABLE = new long[initSlider(BISHOP_DIRECTIONS, BISHOP_MAGICS,
+                BISHOP_MASKS, BISHOP_SHIFTS, BISHOP_OFFSETS, null)];
+        initSlider(BISHOP_DIRECTIONS, BISHOP_MAGICS, BISHOP_MASKS,
+                BISHOP_SHIFTS, BISHOP_OFFSETS, BISHOP_TABLE);
+
+        for (int sq = 0; sq < 64; sq++) {
+            int row = row(sq);
+            int col = col(sq);
+            for (int dx = -2; dx <= 2; dx++) {
+                for (int dy = -2; dy <= 2; dy++) {
+                    if (dx != dy && dx != 0 && dy != 0 && dx + dy != 0) {
+                        KNIGHT_ATTACKS[sq] |= bit(row + dy, col + dx);
+                    }
+                    if (Math.abs(dx) <= 1 && Math.abs(dy) <= 1
+                            && (dx != 0 || dy != 0)) {
+                        KING_ATTACKS[sq] |= bit(row + dy, col + dx);
+                    }
+                }
+            }
+            PAWN_ATTACKS[Side.WHITE.ordinal()][sq] =
+                bit(row - 1, col - 1) | bit(row - 1, col + 1);
+            PAWN_ATTACKS[Side.BLACK.ordinal()][sq] =
+                bit(row + 1, col - 1) | bit(row + 1, col + 1);
+
+            for (int[][] directions
+                    : new int[][][] {ROOK_DIRECTIONS, BISHOP_DIRECTIONS}) {
+                for (int[] d : directions) {
+                    int[][] both = {d, {-d[0], -d[1]}};
+                    long line = (1L << sq)
+                        | slidingAttacks(sq, 0L, both, false);
+                    long between = 0L;
+                    for (int r = row + d[0], c = col + d[1];
+                            ChessUtils.posBoundsTest(r, c);
+                            r += d[0], c += d[1]) {
+                        BETWEEN[sq][square(r, c)] = between;
+                        LINE[sq][square(r, c)] = line;
+                        between |= 1L << square(r, c);
+                    }
+                }
+            }
+        }
+    }
+
+    public static int square(int row, int col) {
+        return row * 8 + col;
+    }
+
+    public static int square(Position p) {
+        return square(p.getRow(), p.getCol());
+    }
+
+    public static int row(int square) {
+        return square >>> 3;
+    }
+
+    public static int col(int square) {
+        return square & 7;
+    }
+
+    public static Position position(int square) {
+        return Position.of(row(square), col(square));
+    }
+
+    /**
+     * @return the single bit for (row, col), or 0 if it is off the board
+     */
+    public static long bit(int row, int col) {
+        return ChessUtils.posBoundsTest(row, col)
+            ? 1L << square(row, col) : 0L;
+    }
+
+    /**
+     * Squares a rook on square sees, stopping at (and including) the first
+     * occupied square in each direction
+     */
+    public static long rookAttacks(int square, long occupied) {
+        return ROOK_TABLE[ROOK_OFFSETS[square]
+            + (int) (((occupied & ROOK_MASKS[square]) * ROOK_MAGICS[square])
+                >>> ROOK_SHIFTS[square])];
+    }
+
+    /**
+     * Squares a bishop on square sees, stopping at (and including) the first
+     * occupied square in each direction
+     */
+    public static long bishopAttacks(int square, long occupied) {
+        return BISHOP_TABLE[BISHOP_OFFSETS[square]
+            + (int) (((occupied & BISHOP_MASKS[square])
+                * BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square])];
+    }
+
+    public static long queenAttacks(int square, long occupied) {
+        return rookAttacks(square, occupied) | bishopAttacks(square, occupied);
+    }
+
+    /**
+     * Fills one slider's attack table. Every subset of a square's relevant
+     * occupancy mask is enumerated and its attack set is stored at the slot
+     * the magic multiply maps it to.
+     *
+     * @return the total table size used
+     */
+    private static int initSlider(int[][] directions, long[] magics,
+            long[] masks, int[] shifts, int[] offsets, long[] table) {
+        int offset = 0;
+        for (int sq = 0; sq < 64; sq++) {
+            masks[sq] = slidingAttacks(sq, 0L, directions, true);
+            int bits = Long.bitCount(masks[sq]);
+            shifts[sq] = 64 - bits;
+            offsets[sq] = offset;
+
+            if (table != null) {
+                long subset = 0L;
+                do {
+                    int index = (int) ((subset * magics[sq]) >>> shifts[sq]);
+                    table[offset + index] =
+                        slidingAttacks(sq, subset, directions, false);
+                    subset = (subset - masks[sq]) & masks[sq];
+                } while (subset != 0);
+            }
+            offset += 1 << bits;
+        }
+        return offset;
+    }
+
+    /**
+     * Walks each direction from square. With relevantOnly set the walk stops
+     * before the board edge, which gives the occupancy mask used for the
+     * magic index; otherwise it gives the real attack set.
+     */
+    private static long slidingAttacks(int square, long occupied,
+            int[][] directions, boolean relevantOnly) {
+        long attacks = 0L;
+        for (int[] d : directions) {
+            int row = row(square) + d[0];
+            int col = col(square) + d[1];
+            while (ChessUtils.posBoundsTest(row, col)) {
+                if (relevantOnly
+                        && !ChessUtils.posBoundsTest(row + d[0], col + d[1])) {
+                    break;
+                }
+                long b = 1L << square(row, col);
+                attacks |= b;
+                if ((occupied & b) != 0) {
+                    break;
+                }
+                row += d[0];
+                col += d[1];
+            }
+        }
+        return attacks;
+    }
+}
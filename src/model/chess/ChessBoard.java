@@ -1,16 +1,16 @@
 package model.chess;
 
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 import model.Board;
 import model.Move;
 import model.Piece;
+import model.PieceType;
 import model.Position;
 import model.Side;
-import model.SideHasNoMovesException;
 
 /**
  * Stateful ChessBoard
@@ -19,10 +19,34 @@ import model.SideHasNoMovesException;
  */
 public class ChessBoard implements Board {
 
-    private Map<Piece, Position> whitePositions;
-    private Map<Piece, Position> blackPositions;
-    private Map<Side, Piece> kings;
+    // one list can hold the two pieces of a kind plus eight promoted pawns
+    private static final int MAX_PIECES = 10;
+    private static final int PAWN =
+        ChessPiece.ChessPieceType.PAWN.ordinal();
+    private static final int KING =
+        ChessPiece.ChessPieceType.KING.ordinal();
+    private static final long PROMOTION_ROWS = 0xFF000000000000FFL;
+
+    // squares of each side's pieces by [side][type][slot], the number of
+    // slots in use per list, and the slot of the piece on each square
+    private int[][][] pieceSquares;
+    private int[][] pieceCounts;
+    private int[] slotOf;
     private Piece[][] board;
+    private long occupied;
+    private long[] sideOccupied;
+
+    // squares attacked by the piece on each square, kept up to date as
+    // pieces are placed and removed
+    private long[] attacksFrom;
+    // rooks and queens, bishops and queens: the pieces whose attacks change
+    // when something moves into or out of their lines
+    private long straightSliders;
+    private long diagonalSliders;
+    // union of attacksFrom per side, rebuilt only when asked for after a
+    // change
+    private long[] attackMaps;
+    private boolean attackMapsValid;
 
     private Map<Side, Boolean> kingsideCastlingRules;
     private Map<Side, Boolean> queensideCastlingRules;
@@ -30,20 +54,37 @@ public class ChessBoard implements Board {
     private Move lastMove;
     private Piece lastMovedPiece;
 
+    // Zobrist key of everything but the side to move, see getHashKey
+    private long hashKey;
+
+    // sums of PieceSquareTables values per side, kept as pieces come and go
+    private int[] material;
+    private int[] pieceSquareScores;
+
+    // moves since the last capture or pawn move, counted per side, and the
+    // number of the move being played, counted in pairs as in FEN
+    private int halfmoveClock;
+    private int fullmoveNumber;
+
+    private Undo[] undoStack;
+    private int undoSize;
+
+    // keys of the positions before each move, for finding repetitions
+    private PositionHistory history;
+
+    // scratch space for see
+    private final long[][] typeMasks =
+        new long[2][ChessPiece.ChessPieceType.values().length];
+    private final int[] exchangeGains = new int[StaticExchange.MAX_CAPTURES];
+
     //creates a chess board with all pieces in the right place
     public ChessBoard() {
-        kingsideCastlingRules = new HashMap<>();
-        queensideCastlingRules = new HashMap<>();
-
+        allocate();
         kingsideCastlingRules.put(Side.WHITE, true);
         queensideCastlingRules.put(Side.WHITE, true);
         kingsideCastlingRules.put(Side.BLACK, true);
         queensideCastlingRules.put(Side.BLACK, true);
-
-        whitePositions = new HashMap<>();
-        blackPositions = new HashMap<>();
-        kings = new HashMap<>();
-        board = new ChessPiece[8][8];
+        fullmoveNumber = 1;
 
         for (Side side : Side.values()) {
             int frontRow = -1;
@@ -60,132 +101,435 @@ public class ChessBoard implements Board {
 
             // create pawns
             for (int i = 0; i < 8; i++) {
-                placePiece(new Pawn(side), new Position(frontRow, i));
+                placePiece(new Pawn(side), Position.of(frontRow, i));
             }
 
             // create Rooks
-            placePiece(new Rook(side), new Position(backRow, 0));
-            placePiece(new Rook(side), new Position(backRow, 7));
+            placePiece(new Rook(side), Position.of(backRow, 0));
+            placePiece(new Rook(side), Position.of(backRow, 7));
 
             // create knights
-            placePiece(new Knight(side), new Position(backRow, 1));
-            placePiece(new Knight(side), new Position(backRow, 6));
+            placePiece(new Knight(side), Position.of(backRow, 1));
+            placePiece(new Knight(side), Position.of(backRow, 6));
 
             // create Bishops
-            placePiece(new Bishop(side), new Position(backRow, 2));
-            placePiece(new Bishop(side), new Position(backRow, 5));
+            placePiece(new Bishop(side), Position.of(backRow, 2));
+            placePiece(new Bishop(side), Position.of(backRow, 5));
 
             // create Queen
             placePiece(new Queen(side),
-                    new Position(side == Side.BLACK ? 0 : 7, 3));
+                    Position.of(side == Side.BLACK ? 0 : 7, 3));
 
             // create King
             ChessPiece king = new King(side);
-            kings.put(side, king);
-            placePiece(king, new Position(side == Side.BLACK ? 0 : 7, 4));
+            placePiece(king, Position.of(side == Side.BLACK ? 0 : 7, 4));
+
+            hashKey ^= Zobrist.castling(side, true)
+                ^ Zobrist.castling(side, false);
+        }
+    }
+
+    /**
+     * Creates a board holding an arbitrary position, as read by Fen. The
+     * board works out en passant and the side to move from the last move
+     * played, so a move that leads to the position is made up: the double
+     * step of the pawn that can be taken en passant, or any White move when
+     * Black is to move.
+     *
+     * @param placement the piece on each square, indexed as in Bitboards
+     * @param sideToMove the side whose turn it is
+     * @param castlingRights rights still held, as bits from
+     * BitboardChessBoard.castlingBit
+     * @param enPassantSquare square a pawn capturing en passant would land
+     * on, or -1
+     * @param halfmoveClock moves since the last capture or pawn move
+     * @param fullmoveNumber number of the move being played
+     */
+    ChessBoard(Piece[] placement, Side sideToMove, int castlingRights,
+            int enPassantSquare, int halfmoveClock, int fullmoveNumber) {
+        allocate();
+        for (int sq = 0; sq < 64; sq++) {
+            if (placement[sq] != null) {
+                placePiece(placement[sq], Bitboards.position(sq));
+            }
+        }
+
+        for (Side side : Side.values()) {
+            for (boolean kingside : new boolean[] {true, false}) {
+                boolean held = (castlingRights & BitboardChessBoard
+                        .castlingBit(side.ordinal(), kingside)) != 0;
+                (kingside ? kingsideCastlingRules : queensideCastlingRules)
+                    .put(side, held);
+                if (held) {
+                    hashKey ^= Zobrist.castling(side, kingside);
+                }
+            }
         }
+
+        if (enPassantSquare >= 0) {
+            int victim = Bitboards.row(enPassantSquare) == 2
+                ? enPassantSquare + 8 : enPassantSquare - 8;
+            lastMove = new Move(
+                    Bitboards.position(2 * enPassantSquare - victim),
+                    Bitboards.position(victim));
+            lastMovedPiece = getPieceAt(lastMove.getDestination());
+        } else if (sideToMove == Side.BLACK) {
+            Position king = Bitboards.position(kingSquare(Side.WHITE));
+            lastMove = new Move(king, king);
+            lastMovedPiece = getPieceAt(king);
+        }
+        hashKey ^= enPassantKey();
+
+        this.halfmoveClock = halfmoveClock;
+        this.fullmoveNumber = fullmoveNumber;
     }
 
-    private ChessBoard(ChessBoard b) {
+    // creates the empty board and state every constructor starts from
+    private void allocate() {
+        kingsideCastlingRules = new HashMap<>();
+        queensideCastlingRules = new HashMap<>();
+
+        pieceSquares = new int[2][ChessPiece.ChessPieceType.values().length]
+            [MAX_PIECES];
+        pieceCounts = new int[2][ChessPiece.ChessPieceType.values().length];
+        slotOf = new int[64];
         board = new ChessPiece[8][8];
+        sideOccupied = new long[2];
+        attacksFrom = new long[64];
+        attackMaps = new long[2];
+        material = new int[2];
+        pieceSquareScores = new int[2];
+        undoStack = new Undo[16];
+        history = new PositionHistory();
+    }
 
+    /**
+     * Creates a copy of b that can be played on independently, for
+     * instance to try moves out on another thread. The grid, piece lists
+     * and castling rules are copied, and the last move is kept so that an
+     * en passant capture is still possible on the copy. The ChessPiece
+     * objects carry no state and are shared. Moves made on b cannot be
+     * unmade on the copy, but positions b has been through still count as
+     * repetitions on it.
+     *
+     * @param b the board to copy
+     */
+    public ChessBoard(ChessBoard b) {
+        board = new ChessPiece[8][8];
         for (int row = 0; row < board.length; row++) {
-            for (int col = 0; col < board[row].length; col++) {
-                board[row][col] = b.board[row][col];
-            }
+            board[row] = Arrays.copyOf(b.board[row], board[row].length);
         }
 
-        whitePositions = new HashMap<>(b.whitePositions);
-        blackPositions = new HashMap<>(b.blackPositions);
-        kings = new HashMap<>(b.kings);
+        pieceSquares = new int[2][][];
+        pieceCounts = new int[2][];
+        for (int side = 0; side < 2; side++) {
+            pieceSquares[side] = new int[b.pieceSquares[side].length][];
+            for (int type = 0; type < pieceSquares[side].length; type++) {
+                pieceSquares[side][type] = b.pieceSquares[side][type].clone();
+            }
+            pieceCounts[side] = b.pieceCounts[side].clone();
+        }
+        slotOf = b.slotOf.clone();
+        occupied = b.occupied;
+        sideOccupied = b.sideOccupied.clone();
+        attacksFrom = b.attacksFrom.clone();
+        straightSliders = b.straightSliders;
+        diagonalSliders = b.diagonalSliders;
+        attackMaps = new long[2];
 
         kingsideCastlingRules = new HashMap<>(b.kingsideCastlingRules);
         queensideCastlingRules = new HashMap<>(b.queensideCastlingRules);
+
+        lastMove = b.lastMove;
+        lastMovedPiece = b.lastMovedPiece;
+        hashKey = b.hashKey;
+        material = b.material.clone();
+        pieceSquareScores = b.pieceSquareScores.clone();
+        halfmoveClock = b.halfmoveClock;
+        fullmoveNumber = b.fullmoveNumber;
+        undoStack = new Undo[16];
+        history = new PositionHistory(b.history);
     }
 
     @Override
     public void movePiece(Piece p, Move m) {
+        long keyBefore = getHashKey();
+        hashKey ^= enPassantKey();
 
         // check for castling
         validateCastling(p, m);
 
         Position destPos = m.getDestination();
 
-        Piece destPiece = getPieceAt(destPos.getRow(), destPos.getCol());
+        Position capturePos = destPos;
 
         // check for en passant capture
         if (m instanceof PawnCaptureMove
                 && ((PawnCaptureMove) m).isEnPassant()) {
-            destPiece = getPieceAt(
-                    ((PawnCaptureMove) m).getEnPassantCapturePosition());
+            capturePos = ((PawnCaptureMove) m).getEnPassantCapturePosition();
+        }
+
+        // the rook half of a castling move is not a turn of its own
+        if (!p.getSide().equals(lastMovedPiece == null
+                ? Side.BLACK : lastMovedPiece.getSide())) {
+            history.push(keyBefore);
+            halfmoveClock = p instanceof Pawn || getPieceAt(capturePos) != null
+                ? 0 : halfmoveClock + 1;
+            if (p.getSide() == Side.BLACK) {
+                fullmoveNumber++;
+            }
         }
 
         //kill a piece
-        if (destPiece != null) {
-            removePiece(destPiece);
+        if (getPieceAt(capturePos) != null) {
+            removePiece(capturePos);
         }
 
         //move p
-        removePiece(p);
-        placePiece(p, destPos);
+        relocatePiece(m.getStart(), destPos);
 
         // keep short history for en passant
         lastMove = m;
         lastMovedPiece = p;
+        hashKey ^= enPassantKey();
     }
 
     @Override
-    public Map<Piece, Set<Move>> generateAllMovesForSide(Side s)
-        throws SideHasNoMovesException {
-
-        boolean sideInCheck = isInCheck(s);
+    public Map<Piece, Set<Move>> generateMovesForSide(Side s) {
         Map<Piece, Set<Move>> allMoves = new HashMap<>();
-        Map<Piece, Position> piecePositions = (s == Side.WHITE)
-            ? whitePositions
-            : blackPositions;
-        boolean sideHasMoves = false;
-
-        for (Piece p : piecePositions.keySet()) {
-            Set<Move> moves = p.generateMoves(piecePositions.get(p));
-            if (p instanceof King) {
-                if (!sideInCheck && queensideCastlingRules.get(s)) {
-                    Position start = new Position(s.getBackRow(), 4);
-                    Position dest = new Position(s.getBackRow(), 2);
-                    moves.add(new CastlingMove(start, dest,
-                            CastlingMove.CastlingType.QUEEN_SIDE));
+
+        // find checkers and pins once, so each candidate move is judged
+        // against masks instead of being played out on the board
+        int kingSquare = kingSquare(s);
+        long checkers = attackersOf(kingSquare, s, occupied);
+        boolean sideInCheck = checkers != 0;
+        long pinned = pinnedPieces(kingSquare, s);
+        long checkMask = checkMask(kingSquare, checkers);
+
+        int[][] lists = pieceSquares[s.ordinal()];
+        for (int type = 0; type < lists.length; type++) {
+            for (int slot = 0; slot < pieceCounts[s.ordinal()][type];
+                    slot++) {
+                Position pos = Bitboards.position(lists[type][slot]);
+                Piece p = getPieceAt(pos);
+                Set<Move> moves = p.generateMoves(pos);
+                if (p instanceof King) {
+                    if (!sideInCheck && queensideCastlingRules.get(s)) {
+                        Position start = Position.of(s.getBackRow(), 4);
+                        Position dest = Position.of(s.getBackRow(), 2);
+                        moves.add(new CastlingMove(start, dest,
+                                CastlingMove.CastlingType.QUEEN_SIDE));
+                    }
+                    if (!sideInCheck && kingsideCastlingRules.get(s)) {
+                        Position start = Position.of(s.getBackRow(), 4);
+                        Position dest = Position.of(s.getBackRow(), 6);
+                        moves.add(new CastlingMove(start, dest,
+                                CastlingMove.CastlingType.KING_SIDE));
+                    }
+                }
+                // filter the piece's own set in place rather than copying
+                // it through a stream
+                Iterator<Move> it = moves.iterator();
+                while (it.hasNext()) {
+                    Move m = it.next();
+                    if (!followsMovementRules(m, p, s) || !keepsKingSafe(m, p,
+                            s, kingSquare, checkMask, pinned)) {
+                        it.remove();
+                    }
+                }
+
+                allMoves.put(p, moves);
+            }
+        }
+
+        return allMoves;
+    }
+
+    @Override
+    public int countLegalMoves(Side s) {
+        return countLegalMoves(s, false);
+    }
+
+    @Override
+    public boolean hasLegalMove(Side s) {
+        return countLegalMoves(s, true) != 0;
+    }
+
+    /**
+     * Counts the legal moves of s from the attack masks kept for every
+     * piece, without building any moves. Each promotion counts once for
+     * every piece the pawn can become.
+     *
+     * @param firstOnly stop as soon as a move has been found
+     */
+    private int countLegalMoves(Side s, boolean firstOnly) {
+        int us = s.ordinal();
+        long own = sideOccupied[us];
+        int kingSquare = kingSquare(s);
+        long checkers = attackersOf(kingSquare, s, occupied);
+        long checkMask = checkMask(kingSquare, checkers);
+
+        // the king first, since with two checkers nothing else can move
+        int count = 0;
+        long withoutKing = occupied & ~(1L << kingSquare);
+        for (long t = attacksFrom[kingSquare] & ~own; t != 0; t &= t - 1) {
+            if (attackersOf(Long.numberOfTrailingZeros(t), s, withoutKing)
+                    == 0) {
+                count++;
+            }
+        }
+        if (checkMask == 0 || (firstOnly && count != 0)) {
+            return count;
+        }
+
+        long pinned = pinnedPieces(kingSquare, s);
+        long enemies = sideOccupied[1 - us];
+        int[][] lists = pieceSquares[us];
+        for (int type = 0; type < lists.length; type++) {
+            if (type == KING) {
+                continue;
+            }
+            for (int slot = 0; slot < pieceCounts[us][type]; slot++) {
+                int from = lists[type][slot];
+                long mask = checkMask;
+                if ((pinned & (1L << from)) != 0) {
+                    mask &= Bitboards.LINE[kingSquare][from];
                 }
-                if (!sideInCheck && kingsideCastlingRules.get(s)) {
-                    Position start = new Position(s.getBackRow(), 4);
-                    Position dest = new Position(s.getBackRow(), 6);
-                    moves.add(new CastlingMove(start, dest,
-                            CastlingMove.CastlingType.KING_SIDE));
+                if (type == PAWN) {
+                    long targets = ((attacksFrom[from] & enemies)
+                        | pawnPushes(from, s)) & mask;
+                    count += Long.bitCount(targets)
+                        + 3 * Long.bitCount(targets & PROMOTION_ROWS);
+                    if (canCaptureEnPassant(from, s, kingSquare)) {
+                        count++;
+                    }
+                } else {
+                    count += Long.bitCount(attacksFrom[from] & ~own & mask);
+                }
+                if (firstOnly && count != 0) {
+                    return count;
                 }
             }
-            Set<Move> filtered = moves
-                .stream()
-                .filter(m -> pieceCanMove(m, s))
-                .collect(Collectors.toCollection(HashSet<Move>::new));
+        }
 
-            if (!filtered.isEmpty()) {
-                sideHasMoves = true;
+        if (checkers == 0) {
+            for (CastlingMove.CastlingType type
+                    : CastlingMove.CastlingType.values()) {
+                Map<Side, Boolean> rules =
+                    type == CastlingMove.CastlingType.KING_SIDE
+                    ? kingsideCastlingRules : queensideCastlingRules;
+                if (rules.get(s) && castlingIsAllowed(s, type)
+                        && attackersOf(castlingDestination(s, type), s,
+                            withoutKing) == 0) {
+                    count++;
+                }
             }
-            allMoves.put(p, filtered);
         }
+        return count;
+    }
 
-        if (!sideHasMoves) {
-            throw new SideHasNoMovesException(s.toString() + " has no moves.");
+    private long pawnPushes(int from, Side s) {
+        int forward = s == Side.WHITE ? -8 : 8;
+        long single = (1L << (from + forward)) & ~occupied;
+        if (single == 0 || Bitboards.row(from) != s.getFrontRow()) {
+            return single;
         }
+        return single | ((1L << (from + 2 * forward)) & ~occupied);
+    }
 
-        return allMoves;
+    /**
+     * Answers if the pawn of s on from can take the pawn that just made a
+     * double step, without exposing the king on kingSquare
+     */
+    private boolean canCaptureEnPassant(int from, Side s, int kingSquare) {
+        if (!(lastMovedPiece instanceof Pawn)
+                || lastMovedPiece.getSide().equals(s)
+                || Math.abs(lastMove.getStart().getRow()
+                    - lastMove.getDestination().getRow()) != 2) {
+            return false;
+        }
+        int victim = Bitboards.square(lastMove.getDestination());
+        int to = (Bitboards.square(lastMove.getStart()) + victim) / 2;
+        if ((attacksFrom[from] & (1L << to)) == 0) {
+            return false;
+        }
+        long captured = 1L << victim;
+        long occ = (occupied & ~(1L << from) & ~captured) | (1L << to);
+        return (attackersOf(kingSquare, s, occ) & ~captured) == 0;
+    }
+
+    // with one checker a move must capture it or block its line, with two
+    // only the king can move
+    private static long checkMask(int kingSquare, long checkers) {
+        if (checkers == 0) {
+            return ~0L;
+        } else if (Long.bitCount(checkers) > 1) {
+            return 0L;
+        }
+        return checkers | Bitboards.BETWEEN[kingSquare]
+            [Long.numberOfTrailingZeros(checkers)];
+    }
+
+    @Override
+    public int see(Move m) {
+        if (m instanceof CastlingMove) {
+            return 0;
+        }
+        for (int side = 0; side < 2; side++) {
+            for (int type = 0; type < typeMasks[side].length; type++) {
+                long mask = 0L;
+                for (int slot = 0; slot < pieceCounts[side][type]; slot++) {
+                    mask |= 1L << pieceSquares[side][type][slot];
+                }
+                typeMasks[side][type] = mask;
+            }
+        }
+
+        Position start = m.getStart();
+        Position dest = m.getDestination();
+        Piece mover = getPieceAt(start);
+        int captured = Bitboards.square(dest);
+        int promotion = -1;
+        if (mover instanceof Pawn) {
+            // a pawn moving sideways onto an empty square takes en passant
+            if (start.getCol() != dest.getCol() && getPieceAt(dest) == null) {
+                captured = Bitboards.square(start.getRow(), dest.getCol());
+            }
+            if (dest.getRow() == 0 || dest.getRow() == 7) {
+                PieceType to = m instanceof PromotionMove
+                    ? ((PromotionMove) m).getPromotingTo() : null;
+                promotion = ((ChessPiece.ChessPieceType) (to == null
+                    ? ChessPiece.ChessPieceType.QUEEN : to)).ordinal();
+            }
+        }
+        return StaticExchange.see(typeMasks, Bitboards.square(start),
+                Bitboards.square(dest), captured, promotion, exchangeGains);
     }
 
     @Override
     public boolean pieceCanMove(Move m, Side movingSide) {
+        Piece mover = getPieceAt(m.getStart());
+        if (mover == null || !followsMovementRules(m, mover, movingSide)) {
+            return false;
+        }
+
+        makeMove(mover, m);
+        boolean moveCausesCheck = isInCheck(movingSide);
+        unmakeMove();
+        return !moveCausesCheck;
+    }
+
+    /**
+     * Checks everything about a move except whether it leaves the mover's
+     * king in check: captures, blockers, en passant and castling
+     * requirements. Flags en passant captures on the move as a side effect.
+     */
+    private boolean followsMovementRules(Move m, Piece mover,
+            Side movingSide) {
         Position dest = m.getDestination();
         Position start = m.getStart();
 
         Piece pieceAtDest = getPieceAt(dest);
-        Piece mover = getPieceAt(start);
 
         boolean positionAvailable = pieceAtDest == null;
 
@@ -226,124 +570,393 @@ public class ChessBoard implements Board {
         }
 
         if (!m.isJump()) {
-            //walk towards destination and check for pieces
-            //along the way
-            int xi = start.getCol(), xf = dest.getCol();
-            int yi = start.getRow(), yf = dest.getRow();
-
-            int dx = 0, dy = 0;
-            if (Math.abs(xf - xi) != 0) {
-                dx = (xf - xi) / Math.abs(xf - xi);
-            }
-            if (Math.abs(yf - yi) != 0) {
-                dy = (yf - yi) / Math.abs(yf - yi);
+            //anything standing between start and destination blocks the
+            //move, which the slider attack tables answer in one lookup
+            int from = Bitboards.square(start);
+            long reach = start.getRow() == dest.getRow()
+                    || start.getCol() == dest.getCol()
+                ? Bitboards.rookAttacks(from, occupied)
+                : Bitboards.bishopAttacks(from, occupied);
+            if ((reach & (1L << Bitboards.square(dest))) == 0) {
+                return false;
             }
+        }
 
-            for (int x = xi + dx, y = yi + dy;
-                    x != xf || y != yf;
-                    x += dx, y += dy) {
-                if (getPieceAt(y, x) != null) {
-                    return false;
-                }
-            }
+        if (m instanceof CastlingMove) {
+            return castlingIsAllowed(movingSide,
+                    ((CastlingMove) m).getCastlingType());
         }
+        return true;
+    }
 
-        if (positionAvailable || canCapture) {
-            ChessBoard preview = new ChessBoard(this);
-            Position destPos = m.getDestination();
+    /**
+     * Castling needs the side's own rook in the corner, nothing between
+     * king and rook, and the king may not castle out of or through check.
+     * Landing in check is left to the king safety test.
+     */
+    private boolean castlingIsAllowed(Side s,
+            CastlingMove.CastlingType type) {
+        int row = s.getBackRow();
+        Piece rook = getPieceAt(row, type.getStartCol());
+        if (!(rook instanceof Rook) || !rook.getSide().equals(s)) {
+            return false;
+        }
 
-            Piece destPiece = getPieceAt(destPos.getRow(), destPos.getCol());
+        int kingSquare = Bitboards.square(row, 4);
+        int rookSquare = Bitboards.square(row, type.getStartCol());
+        // the king passes the square the rook ends up on
+        int passing = Bitboards.square(row, type.getDestCol());
+        long attacked = attackedBy(other(s));
+        return (Bitboards.BETWEEN[kingSquare][rookSquare] & occupied) == 0
+            && (attacked & (1L << kingSquare | 1L << passing)) == 0;
+    }
 
-            //kill a piece
-            if (destPiece != null) {
-                preview.removePiece(destPiece);
+    private static int castlingDestination(Side s,
+            CastlingMove.CastlingType type) {
+        return Bitboards.square(s.getBackRow(),
+                type == CastlingMove.CastlingType.KING_SIDE ? 6 : 2);
+    }
+
+    /**
+     * Answers if a move that follows the movement rules leaves the king of
+     * s safe, given the position's check mask and pinned pieces
+     */
+    private boolean keepsKingSafe(Move m, Piece mover, Side s, int kingSquare,
+            long checkMask, long pinned) {
+        int from = Bitboards.square(m.getStart());
+        int to = Bitboards.square(m.getDestination());
+
+        if (mover.getType() == ChessPiece.ChessPieceType.KING) {
+            // leave the king out of the occupancy so it cannot shield the
+            // square behind it from a slider it is stepping away from
+            return attackersOf(to, s, occupied & ~(1L << from)) == 0;
+        }
+
+        if (m instanceof PawnCaptureMove
+                && ((PawnCaptureMove) m).isEnPassant()) {
+            // the captured pawn is not on the destination, and both pawns
+            // leaving the row can expose the king, so test the occupancy
+            // the capture leaves behind
+            long captured = 1L << Bitboards.square(
+                    ((PawnCaptureMove) m).getEnPassantCapturePosition());
+            long occ = (occupied & ~(1L << from) & ~captured) | (1L << to);
+            return (attackersOf(kingSquare, s, occ) & ~captured) == 0;
+        }
+
+        return (checkMask & (1L << to)) != 0
+            && ((pinned & (1L << from)) == 0
+                || (Bitboards.LINE[kingSquare][from] & (1L << to)) != 0);
+    }
+
+    /**
+     * Plays a complete move in place: the castling rook is moved along with
+     * the king, and a PromotionMove with a chosen piece type replaces the
+     * pawn. Every call must be paired with a later call to unmakeMove, which
+     * restores the board exactly, including castling rights and the en
+     * passant history.
+     *
+     * @param p the piece to move
+     * @param m a move for p, as generated by this board
+     */
+    public void makeMove(Piece p, Move m) {
+        if (undoSize == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoSize * 2);
+        }
+        if (undoStack[undoSize] == null) {
+            undoStack[undoSize] = new Undo();
+        }
+        Undo u = undoStack[undoSize++];
+
+        Side side = p.getSide();
+        u.mover = p;
+        u.move = m;
+        u.kingside = kingsideCastlingRules.get(side);
+        u.queenside = queensideCastlingRules.get(side);
+        u.otherKingside = kingsideCastlingRules.get(other(side));
+        u.otherQueenside = queensideCastlingRules.get(other(side));
+        u.lastMove = lastMove;
+        u.lastMovedPiece = lastMovedPiece;
+        u.hashKey = hashKey;
+        u.halfmoveClock = halfmoveClock;
+        u.fullmoveNumber = fullmoveNumber;
+
+        u.capturedAt = m.getDestination();
+        if (m instanceof PawnCaptureMove
+                && ((PawnCaptureMove) m).isEnPassant()) {
+            u.capturedAt = ((PawnCaptureMove) m).getEnPassantCapturePosition();
+        }
+        u.captured = getPieceAt(u.capturedAt);
+
+        // movePiece records the position only if p moves on its side's
+        // turn, which pieceCanMove doesn't guarantee
+        int historySize = history.size();
+        movePiece(p, m);
+        u.pushedKey = history.size() > historySize;
+
+        u.castledRook = null;
+        if (m instanceof CastlingMove) {
+            CastlingMove.CastlingType type =
+                ((CastlingMove) m).getCastlingType();
+            u.castledRook =
+                getPieceAt(side.getBackRow(), type.getStartCol());
+            if (u.castledRook != null) {
+                relocatePiece(
+                        Position.of(side.getBackRow(), type.getStartCol()),
+                        Position.of(side.getBackRow(), type.getDestCol()));
             }
-            //move p
-            preview.removePiece(mover);
-            preview.placePiece(mover, destPos);
+        }
+
+        u.promoted = null;
+        if (m instanceof PromotionMove
+                && ((PromotionMove) m).getPromotingTo() != null) {
+            u.promoted = ChessUtils.getPieceOfType(
+                    ((PromotionMove) m).getPromotingTo(), side);
+            replacePieceAt(m.getDestination(), u.promoted);
+        }
+    }
 
-            boolean moveCausesCheck = preview.isInCheck(movingSide);
-            return !moveCausesCheck;
+    /**
+     * Takes back the most recent makeMove
+     */
+    public void unmakeMove() {
+        Undo u = undoStack[--undoSize];
+        if (u.pushedKey) {
+            history.pop();
+        }
+        Side side = u.mover.getSide();
+
+        if (u.promoted != null) {
+            removePiece(u.move.getDestination());
+            placePiece(u.mover, u.move.getStart());
         } else {
-            return false;
+            relocatePiece(u.move.getDestination(), u.move.getStart());
+        }
+
+        if (u.castledRook != null) {
+            CastlingMove.CastlingType type =
+                ((CastlingMove) u.move).getCastlingType();
+            relocatePiece(Position.of(side.getBackRow(), type.getDestCol()),
+                    Position.of(side.getBackRow(), type.getStartCol()));
+        }
+
+        if (u.captured != null) {
+            placePiece(u.captured, u.capturedAt);
         }
+
+        kingsideCastlingRules.put(side, u.kingside);
+        queensideCastlingRules.put(side, u.queenside);
+        kingsideCastlingRules.put(other(side), u.otherKingside);
+        queensideCastlingRules.put(other(side), u.otherQueenside);
+        lastMove = u.lastMove;
+        lastMovedPiece = u.lastMovedPiece;
+        hashKey = u.hashKey;
+        halfmoveClock = u.halfmoveClock;
+        fullmoveNumber = u.fullmoveNumber;
+
+        // don't keep captured pieces and old moves reachable
+        u.mover = null;
+        u.move = null;
+        u.captured = null;
+        u.castledRook = null;
+        u.promoted = null;
+        u.lastMove = null;
+        u.lastMovedPiece = null;
+    }
+
+    /**
+     * Returns the Zobrist key of the position: the pieces, castling rights,
+     * a pawn that can be captured en passant and the side to move. Equal
+     * positions have equal keys, on this board and on BitboardChessBoard.
+     *
+     * @return the 64-bit position key
+     */
+    @Override
+    public long getHashKey() {
+        return getSideToMove() == Side.BLACK ? hashKey ^ Zobrist.SIDE : hashKey;
+    }
+
+    /**
+     * @return the side whose turn it is: the one that did not move last
+     */
+    public Side getSideToMove() {
+        return lastMovedPiece != null
+                && lastMovedPiece.getSide().equals(Side.WHITE)
+            ? Side.BLACK : Side.WHITE;
+    }
+
+    @Override
+    public int getMaterial(Side s) {
+        return material[s.ordinal()];
+    }
+
+    @Override
+    public int getPieceSquareScore(Side s) {
+        return pieceSquareScores[s.ordinal()];
+    }
+
+    @Override
+    public int countRepetitions() {
+        return history.repetitions(getHashKey(), halfmoveClock, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the number of moves since the last capture or pawn move
+     */
+    @Override
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    /**
+     * @return the number of the move being played, starting at 1 and going
+     * up after each move by Black
+     */
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    // the positions this board went through, for a BitboardChessBoard
+    // copying it
+    PositionHistory copyHistory() {
+        return new PositionHistory(history);
+    }
+
+    // castling rights as bits from BitboardChessBoard.castlingBit, for Fen
+    int getCastlingRights() {
+        int rights = 0;
+        for (Side side : Side.values()) {
+            if (kingsideCastlingRules.get(side)) {
+                rights |= BitboardChessBoard.castlingBit(side.ordinal(), true);
+            }
+            if (queensideCastlingRules.get(side)) {
+                rights |= BitboardChessBoard.castlingBit(side.ordinal(),
+                        false);
+            }
+        }
+        return rights;
+    }
+
+    // square a pawn capturing en passant would land on, or -1, for Fen
+    int getEnPassantSquare() {
+        if (!(lastMovedPiece instanceof Pawn) || Math.abs(
+                lastMove.getStart().getRow()
+                - lastMove.getDestination().getRow()) != 2) {
+            return -1;
+        }
+        return (Bitboards.square(lastMove.getStart())
+            + Bitboards.square(lastMove.getDestination())) / 2;
     }
 
     @Override
     public Map<Piece, Position> getAllActivePiecesPositions() {
         Map<Piece, Position> all = new HashMap<>();
-        all.putAll(whitePositions);
-        all.putAll(blackPositions);
+        for (long b = occupied; b != 0; b &= b - 1) {
+            int sq = Long.numberOfTrailingZeros(b);
+            all.put(getPieceAt(Bitboards.row(sq), Bitboards.col(sq)),
+                    Bitboards.position(sq));
+        }
         return all;
     }
 
+    @Override
     public boolean isInCheck(Side s) {
-        Piece k = kings.get(s);
-        Map<Piece, Position> piecePositions;
+        return (attackedBy(other(s)) & 1L << kingSquare(s)) != 0;
+    }
 
-        if (s.equals(Side.BLACK)) {
-            piecePositions = blackPositions;
-        } else {
-            piecePositions = whitePositions;
-        }
-
-        Position kingPosition = piecePositions.get(k);
-
-        //throws NPE when king is killed
-        int row = kingPosition.getRow();
-        int col = kingPosition.getCol();
-
-        // check for attacking knights because they're weird and special
-        for (int dx = -2; dx <= 2; dx++) {
-            for (int dy = -2; dy <= 2; dy++) {
-                if (dx != dy && dx != 0 && dy != 0 && dx + dy != 0) {
-                    if (ChessUtils.posBoundsTest(row + dy, col + dx)) {
-                        Piece p = getPieceAt(row + dy, col + dx);
-                        if (p != null
-                                && !p.getSide().equals(s)
-                                && p.getType().equals(
-                                    ChessPiece.ChessPieceType.KNIGHT)) {
-                            return true;
-                        }
-                    }
+    private int kingSquare(Side s) {
+        return pieceSquares[s.ordinal()][KING][0];
+    }
+
+    /**
+     * @return every square a piece of side s attacks
+     */
+    private long attackedBy(Side s) {
+        if (!attackMapsValid) {
+            for (Side side : Side.values()) {
+                long map = 0L;
+                for (long b = sideOccupied[side.ordinal()]; b != 0;
+                        b &= b - 1) {
+                    map |= attacksFrom[Long.numberOfTrailingZeros(b)];
                 }
+                attackMaps[side.ordinal()] = map;
             }
+            attackMapsValid = true;
         }
+        return attackMaps[s.ordinal()];
+    }
 
+    /**
+     * Finds the enemies of s that attack a square when the occupied squares
+     * are occ
+     *
+     * @return the attackers' squares as a bitboard
+     */
+    private long attackersOf(int square, Side s, long occ) {
+        // the first piece along each line from the square is the only one
+        // that can attack along it
+        long lines = Bitboards.rookAttacks(square, occ) & occ;
+        long diagonals = Bitboards.bishopAttacks(square, occ) & occ;
+
+        return attackers(lines, s, ChessPiece.ChessPieceType.ROOK,
+                    ChessPiece.ChessPieceType.QUEEN)
+            | attackers(diagonals, s, ChessPiece.ChessPieceType.BISHOP,
+                    ChessPiece.ChessPieceType.QUEEN)
+            | attackers(Bitboards.KNIGHT_ATTACKS[square] & occ, s,
+                    ChessPiece.ChessPieceType.KNIGHT, null)
+            | attackers(Bitboards.KING_ATTACKS[square] & occ, s,
+                    ChessPiece.ChessPieceType.KING, null)
+            | attackers(Bitboards.PAWN_ATTACKS[s.ordinal()][square] & occ,
+                    s, ChessPiece.ChessPieceType.PAWN, null);
+    }
 
-        // check for all the other linear pieces
-        for (int dx = -1; dx <= 1; dx++) {
-            for (int dy = -1; dy <= 1; dy++) {
-                int attackCol = col + dx;
-                int attackRow = row + dy;
-                boolean kingDefended = false;
-                while (!kingDefended
-                        && (dx != 0 || dy != 0)
-                        && ChessUtils.posBoundsTest(attackRow, attackCol)) {
-                    Piece attacker = getPieceAt(attackRow, attackCol);
-                    if (attacker != null && !attacker.getSide().equals(s)) {
-                        Position p = new Position(attackRow, attackCol);
-                        if (attacker.generateMoves(p).stream()
-                                .filter(m -> !m.cannotCapture())
-                                .map(m -> m.getDestination())
-                                .collect(Collectors
-                                    .toCollection(HashSet<Position>::new))
-                                .contains(kingPosition)) {
-                            return true;
-                        } else {
-                            kingDefended = true;
-                        }
-                    } else if (attacker != null
-                            && attacker.getSide().equals(s)) {
-                        kingDefended = true;
-                    }
-                    attackCol = attackCol + dx;
-                    attackRow = attackRow + dy;
-                }
+    // the squares in candidates that hold an enemy piece of either type
+    private long attackers(long candidates, Side s, PieceType type,
+            PieceType otherType) {
+        long found = 0L;
+        for (long c = candidates; c != 0; c &= c - 1) {
+            int sq = Long.numberOfTrailingZeros(c);
+            Piece p = getPieceAt(Bitboards.row(sq), Bitboards.col(sq));
+            if (p != null && !p.getSide().equals(s)
+                    && (p.getType() == type || p.getType() == otherType)) {
+                found |= 1L << sq;
             }
         }
+        return found;
+    }
 
-        return false;
+    /**
+     * Finds the pieces of s that stand alone between their king and an
+     * enemy slider, and so may only move along that line
+     */
+    private long pinnedPieces(int kingSquare, Side s) {
+        long lines = Bitboards.rookAttacks(kingSquare, occupied) & occupied;
+        long diagonals =
+            Bitboards.bishopAttacks(kingSquare, occupied) & occupied;
+        long pinned = 0L;
+
+        for (long b = lines | diagonals; b != 0; b &= b - 1) {
+            int sq = Long.numberOfTrailingZeros(b);
+            if (!getPieceAt(Bitboards.row(sq), Bitboards.col(sq))
+                    .getSide().equals(s)) {
+                continue;
+            }
+            // lift the piece and see what appears behind it on its line
+            long occ = occupied & ~(1L << sq);
+            boolean straight = (lines & (1L << sq)) != 0;
+            long behind = (straight
+                    ? Bitboards.rookAttacks(kingSquare, occ)
+                    : Bitboards.bishopAttacks(kingSquare, occ))
+                & occ & Bitboards.LINE[kingSquare][sq] & ~(lines | diagonals);
+            long pinners = straight
+                ? attackers(behind, s, ChessPiece.ChessPieceType.ROOK,
+                    ChessPiece.ChessPieceType.QUEEN)
+                : attackers(behind, s, ChessPiece.ChessPieceType.BISHOP,
+                    ChessPiece.ChessPieceType.QUEEN);
+            if (pinners != 0) {
+                pinned |= 1L << sq;
+            }
+        }
+        return pinned;
     }
 
     @Override
@@ -353,8 +966,9 @@ public class ChessBoard implements Board {
 
     @Override
     public void replacePieceAt(Position pos, Piece newPiece) {
-        Piece old = getPieceAt(pos);
-        removePiece(old);
+        if (getPieceAt(pos) != null) {
+            removePiece(pos);
+        }
         placePiece(newPiece, pos);
     }
 
@@ -363,37 +977,212 @@ public class ChessBoard implements Board {
     }
 
     private void placePiece(Piece p, Position pos) {
-        if (p.getSide().equals(Side.BLACK)) {
-            blackPositions.put(p, pos);
-        } else {
-            whitePositions.put(p, pos);
+        int sq = Bitboards.square(pos);
+        int side = p.getSide().ordinal();
+        int type = typeOf(p);
+        int slot = pieceCounts[side][type]++;
+        pieceSquares[side][type][slot] = sq;
+        slotOf[sq] = slot;
+
+        board[pos.getRow()][pos.getCol()] = p;
+        occupied |= 1L << sq;
+        sideOccupied[p.getSide().ordinal()] |= 1L << sq;
+        if (isStraightSlider(p)) {
+            straightSliders |= 1L << sq;
         }
+        if (isDiagonalSlider(p)) {
+            diagonalSliders |= 1L << sq;
+        }
+        hashKey ^= Zobrist.piece(p, sq);
+        material[side] += PieceSquareTables.material(type);
+        pieceSquareScores[side] += PieceSquareTables.square(type, side, sq);
+        squareChanged(sq);
+    }
+
+    private void removePiece(Position pos) {
+        Piece p = getPieceAt(pos);
+        int sq = Bitboards.square(pos);
+        int side = p.getSide().ordinal();
+        int type = typeOf(p);
+        // fill the gap with the last piece in the list
+        int last = pieceSquares[side][type][--pieceCounts[side][type]];
+        pieceSquares[side][type][slotOf[sq]] = last;
+        slotOf[last] = slotOf[sq];
+
+        board[pos.getRow()][pos.getCol()] = null;
+        occupied &= ~(1L << sq);
+        sideOccupied[p.getSide().ordinal()] &= ~(1L << sq);
+        straightSliders &= ~(1L << sq);
+        diagonalSliders &= ~(1L << sq);
+        hashKey ^= Zobrist.piece(p, sq);
+        material[side] -= PieceSquareTables.material(type);
+        pieceSquareScores[side] -= PieceSquareTables.square(type, side, sq);
+        squareChanged(sq);
+    }
+
+    // moves the piece on old to the empty square pos, keeping its slot in
+    // the piece lists
+    private void relocatePiece(Position old, Position pos) {
+        Piece p = getPieceAt(old);
+        int from = Bitboards.square(old);
+        int to = Bitboards.square(pos);
+        int side = p.getSide().ordinal();
+        int type = typeOf(p);
+        pieceSquares[side][type][slotOf[from]] = to;
+        slotOf[to] = slotOf[from];
+
+        long fromTo = 1L << from | 1L << to;
+        board[old.getRow()][old.getCol()] = null;
         board[pos.getRow()][pos.getCol()] = p;
+        occupied ^= fromTo;
+        sideOccupied[p.getSide().ordinal()] ^= fromTo;
+        if (isStraightSlider(p)) {
+            straightSliders ^= fromTo;
+        }
+        if (isDiagonalSlider(p)) {
+            diagonalSliders ^= fromTo;
+        }
+        hashKey ^= Zobrist.piece(p, from) ^ Zobrist.piece(p, to);
+        pieceSquareScores[side] += PieceSquareTables.square(type, side, to)
+            - PieceSquareTables.square(type, side, from);
+        squareChanged(from);
+        squareChanged(to);
     }
 
-    private void removePiece(Piece p) {
-        Position pos;
-        if (p.getSide().equals(Side.BLACK)) {
-            pos = blackPositions.get(p);
-            blackPositions.remove(p);
-        } else {
-            pos = whitePositions.get(p);
-            whitePositions.remove(p);
+    /**
+     * Brings attacksFrom up to date after a piece arrived on or left sq: the
+     * square's own entry, and every slider whose line runs through sq and
+     * is now blocked or opened there
+     */
+    private void squareChanged(int sq) {
+        Piece p = getPieceAt(Bitboards.row(sq), Bitboards.col(sq));
+        attacksFrom[sq] = p == null ? 0L : attacksOf(p, sq);
+
+        long sliders = (Bitboards.rookAttacks(sq, occupied) & straightSliders)
+            | (Bitboards.bishopAttacks(sq, occupied) & diagonalSliders);
+        for (; sliders != 0; sliders &= sliders - 1) {
+            int from = Long.numberOfTrailingZeros(sliders);
+            attacksFrom[from] = attacksOf(
+                    getPieceAt(Bitboards.row(from), Bitboards.col(from)), from);
         }
-        board[pos.getRow()][pos.getCol()] = null;
+        attackMapsValid = false;
+    }
+
+    private long attacksOf(Piece p, int sq) {
+        PieceType type = p.getType();
+        if (type == ChessPiece.ChessPieceType.PAWN) {
+            return Bitboards.PAWN_ATTACKS[p.getSide().ordinal()][sq];
+        } else if (type == ChessPiece.ChessPieceType.KNIGHT) {
+            return Bitboards.KNIGHT_ATTACKS[sq];
+        } else if (type == ChessPiece.ChessPieceType.KING) {
+            return Bitboards.KING_ATTACKS[sq];
+        }
+        long attacks = 0L;
+        if (isStraightSlider(p)) {
+            attacks |= Bitboards.rookAttacks(sq, occupied);
+        }
+        if (isDiagonalSlider(p)) {
+            attacks |= Bitboards.bishopAttacks(sq, occupied);
+        }
+        return attacks;
+    }
+
+    private static int typeOf(Piece p) {
+        return ((ChessPiece.ChessPieceType) p.getType()).ordinal();
+    }
+
+    private static boolean isStraightSlider(Piece p) {
+        return p.getType() == ChessPiece.ChessPieceType.ROOK
+            || p.getType() == ChessPiece.ChessPieceType.QUEEN;
+    }
+
+    private static boolean isDiagonalSlider(Piece p) {
+        return p.getType() == ChessPiece.ChessPieceType.BISHOP
+            || p.getType() == ChessPiece.ChessPieceType.QUEEN;
     }
 
     private void validateCastling(Piece p, Move m) {
         if (p instanceof King && m.getStart().getCol() == 4
                 && (m.getStart().getRow() == p.getSide().getBackRow())) {
-            kingsideCastlingRules.put(p.getSide(), false);
-            queensideCastlingRules.put(p.getSide(), false);
+            revokeCastling(p.getSide(), true);
+            revokeCastling(p.getSide(), false);
         } else if (p instanceof Rook && m.getStart().getCol() == 0
                 && m.getStart().getRow() == p.getSide().getBackRow()) {
-            queensideCastlingRules.put(p.getSide(), false);
+            revokeCastling(p.getSide(), false);
         } else if (p instanceof Rook && m.getStart().getCol() == 7
                 && m.getStart().getRow() == p.getSide().getBackRow()) {
-            kingsideCastlingRules.put(p.getSide(), false);
+            revokeCastling(p.getSide(), true);
+        }
+
+        // a rook captured on its home square takes its castling right along
+        Side other = other(p.getSide());
+        Position dest = m.getDestination();
+        if (dest.getRow() == other.getBackRow() && dest.getCol() == 0) {
+            revokeCastling(other, false);
+        } else if (dest.getRow() == other.getBackRow()
+                && dest.getCol() == 7) {
+            revokeCastling(other, true);
         }
     }
+
+    private void revokeCastling(Side s, boolean kingside) {
+        Map<Side, Boolean> rules = kingside
+            ? kingsideCastlingRules
+            : queensideCastlingRules;
+        if (rules.put(s, false)) {
+            hashKey ^= Zobrist.castling(s, kingside);
+        }
+    }
+
+    /**
+     * The en passant part of the hash key. The column only counts when a
+     * pawn has just moved two squares and an enemy pawn stands next to it,
+     * so positions that only differ by an unusable double step hash alike.
+     */
+    private long enPassantKey() {
+        if (!(lastMovedPiece instanceof Pawn) || Math.abs(
+                lastMove.getStart().getRow()
+                - lastMove.getDestination().getRow()) != 2) {
+            return 0L;
+        }
+        Position dest = lastMove.getDestination();
+        for (int col = dest.getCol() - 1; col <= dest.getCol() + 1;
+                col += 2) {
+            if (ChessUtils.posBoundsTest(dest.getRow(), col)) {
+                Piece beside = getPieceAt(dest.getRow(), col);
+                if (beside instanceof Pawn && !beside.getSide()
+                        .equals(lastMovedPiece.getSide())) {
+                    return Zobrist.enPassant(dest.getCol());
+                }
+            }
+        }
+        return 0L;
+    }
+
+    private static Side other(Side s) {
+        return s == Side.WHITE ? Side.BLACK : Side.WHITE;
+    }
+
+    /**
+     * Everything makeMove changes that unmakeMove cannot work out again
+     * from the move itself. Records are reused between moves.
+     */
+    private static class Undo {
+        private Piece mover;
+        private Move move;
+        private Piece captured;
+        private Position capturedAt;
+        private Piece castledRook;
+        private Piece promoted;
+        private boolean kingside;
+        private boolean queenside;
+        private boolean otherKingside;
+        private boolean otherQueenside;
+        private Move lastMove;
+        private Piece lastMovedPiece;
+        private boolean pushedKey;
+        private long hashKey;
+        private int halfmoveClock;
+        private int fullmoveNumber;
+    }
 }
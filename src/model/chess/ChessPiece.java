@@ -1,6 +1,7 @@
 package model.chess;
 
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import model.Move;
 import model.Piece;
 import model.PieceType;
@@ -9,7 +10,9 @@ import model.Side;
 
 public abstract class ChessPiece implements Piece {
 
-    private static int refCount;
+    // shared by every thread that creates pieces, e.g. boards built in
+    // parallel searches
+    private static final AtomicInteger refCount = new AtomicInteger();
 
     private int id;
     private Side side;
@@ -17,7 +20,7 @@ public abstract class ChessPiece implements Piece {
 
 
     public ChessPiece(ChessPieceType type, Side side) {
-        id = refCount++;
+        id = refCount.getAndIncrement();
         this.side = side;
         this.type = type;
     }
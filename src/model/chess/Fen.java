@@ -0,0 +1,395 @@
+package model.chess;
+
+import java.util.Arrays;
+import model.Board;
+import model.Piece;
+import model.Position;
+import model.Side;
+
+/**
+ * Reads and writes positions in Forsyth-Edwards Notation, for both
+ * ChessBoard and BitboardChessBoard. The move clocks may be left out when
+ * reading, and anything after them is ignored, so EPD lines with their
+ * operations can be read as well.
+ *
+ * For reading many positions from a file see FenReader, which reuses one
+ * Parser for every line.
+ */
+public class Fen {
+
+    public static final String START =
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+    // in ChessPieceType ordinal order
+    private static final String PIECE_LETTERS = "prnbqk";
+
+    // ChessPieceType ordinal for each letter of either case, -1 for other
+    // characters; faster than searching PIECE_LETTERS for every piece
+    private static final int[] LETTER_TYPES = new int[128];
+
+    static {
+        Arrays.fill(LETTER_TYPES, -1);
+        for (int type = 0; type < PIECE_LETTERS.length(); type++) {
+            char letter = PIECE_LETTERS.charAt(type);
+            LETTER_TYPES[letter] = type;
+            LETTER_TYPES[Character.toUpperCase(letter)] = type;
+        }
+    }
+
+    // pieces of each type in the starting position, by ChessPieceType
+    // ordinal; anything beyond these must have come from a promotion
+    private static final int[] START_COUNTS = {8, 2, 2, 2, 1, 1};
+
+    /**
+     * Builds a BitboardChessBoard set up as described by fen
+     *
+     * @param fen the position
+     * @return a new board with that position and side to move
+     * @throws IllegalArgumentException if fen cannot be read
+     */
+    public static BitboardChessBoard toBitboardChessBoard(String fen) {
+        Parser p = new Parser();
+        p.parse(fen.toCharArray(), fen.length());
+        return new BitboardChessBoard(p.placement, p.sideToMove,
+                p.castlingRights, p.enPassantSquare, p.halfmoveClock,
+                p.fullmoveNumber);
+    }
+
+    /**
+     * Builds a ChessBoard set up as described by fen
+     *
+     * @param fen the position
+     * @return a new board with that position and side to move
+     * @throws IllegalArgumentException if fen cannot be read
+     */
+    public static ChessBoard toChessBoard(String fen) {
+        Parser p = new Parser();
+        p.parse(fen.toCharArray(), fen.length());
+        return new ChessBoard(p.placement, p.sideToMove, p.castlingRights,
+                p.enPassantSquare, p.halfmoveClock, p.fullmoveNumber);
+    }
+
+    /**
+     * @param b the board to describe
+     * @return the position on b with all six FEN fields
+     */
+    public static String toFen(BitboardChessBoard b) {
+        return write(b, b.getSideToMove(), b.getCastlingRights(),
+                b.getEnPassantSquare(), b.getHalfmoveClock(),
+                b.getFullmoveNumber());
+    }
+
+    /**
+     * @param b the board to describe
+     * @return the position on b with all six FEN fields
+     */
+    public static String toFen(ChessBoard b) {
+        return write(b, b.getSideToMove(), b.getCastlingRights(),
+                b.getEnPassantSquare(), b.getHalfmoveClock(),
+                b.getFullmoveNumber());
+    }
+
+    private static String write(Board b, Side sideToMove, int castlingRights,
+            int enPassantSquare, int halfmoveClock, int fullmoveNumber) {
+        StringBuilder fen = new StringBuilder(90);
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int col = 0; col < 8; col++) {
+                Piece p = b.getPieceAt(Position.of(row, col));
+                if (p == null) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                char letter = PIECE_LETTERS.charAt(
+                        ((ChessPiece.ChessPieceType) p.getType()).ordinal());
+                fen.append(p.getSide() == Side.WHITE
+                        ? Character.toUpperCase(letter) : letter);
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (row < 7) {
+                fen.append('/');
+            }
+        }
+
+        fen.append(sideToMove == Side.WHITE ? " w " : " b ");
+
+        int length = fen.length();
+        for (Side side : Side.values()) {
+            for (boolean kingside : new boolean[] {true, false}) {
+                if ((castlingRights & BitboardChessBoard.castlingBit(
+                        side.ordinal(), kingside)) != 0) {
+                    char right = kingside ? 'k' : 'q';
+                    fen.append(side == Side.WHITE
+                            ? Character.toUpperCase(right) : right);
+                }
+            }
+        }
+        if (fen.length() == length) {
+            fen.append('-');
+        }
+
+        fen.append(' ');
+        if (enPassantSquare < 0) {
+            fen.append('-');
+        } else {
+            fen.append((char) ('a' + Bitboards.col(enPassantSquare)))
+                .append((char) ('8' - Bitboards.row(enPassantSquare)));
+        }
+
+        return fen.append(' ').append(halfmoveClock)
+            .append(' ').append(fullmoveNumber).toString();
+    }
+
+    /**
+     * Reads the fields of a FEN straight from characters, without splitting
+     * it into strings or using regular expressions. A parser can be reused:
+     * each parse overwrites the fields, and the Piece objects it hands out
+     * are reused from one position to the next, so reading many positions
+     * allocates almost nothing. Pieces carry no state, so boards built from
+     * different parses may safely share them.
+     */
+    static class Parser {
+
+        final Piece[] placement = new Piece[64];
+        Side sideToMove;
+        int castlingRights;
+        int enPassantSquare;
+        int halfmoveClock;
+        int fullmoveNumber;
+
+        // pieces by [side][type][how many of the type came before]
+        private final Piece[][][] pool = new Piece[2][6][10];
+        private final int[][] counts = new int[2][6];
+
+        private char[] text;
+        private int pos;
+        private int end;
+
+        /**
+         * Reads the FEN held in the first length characters of text
+         *
+         * @throws IllegalArgumentException if it cannot be read
+         */
+        void parse(char[] text, int length) {
+            this.text = text;
+            this.pos = 0;
+            this.end = length;
+
+            skipSpaces();
+            parsePlacement();
+            skipSpaces();
+            parseSide();
+            skipSpaces();
+            parseCastling();
+            skipSpaces();
+            parseEnPassant();
+
+            halfmoveClock = 0;
+            fullmoveNumber = 1;
+            skipSpaces();
+            if (pos < end && isDigit(text[pos])) {
+                halfmoveClock = parseNumber();
+                skipSpaces();
+                if (pos < end && isDigit(text[pos])) {
+                    fullmoveNumber = Math.max(1, parseNumber());
+                }
+            }
+        }
+
+        private void parsePlacement() {
+            Arrays.fill(placement, null);
+            for (int[] c : counts) {
+                Arrays.fill(c, 0);
+            }
+
+            int row = 0;
+            int col = 0;
+            for (; pos < end && !isSpace(text[pos]); pos++) {
+                char c = text[pos];
+                if (c == '/') {
+                    if (col != 8 || ++row > 7) {
+                        throw bad("Bad FEN row");
+                    }
+                    col = 0;
+                } else if (c >= '1' && c <= '8') {
+                    col += c - '0';
+                    if (col > 8) {
+                        throw bad("Bad FEN row");
+                    }
+                } else {
+                    int type = c < LETTER_TYPES.length ? LETTER_TYPES[c] : -1;
+                    if (type < 0 || col > 7) {
+                        throw bad("Bad FEN row");
+                    }
+                    Side side = c < 'a' ? Side.WHITE : Side.BLACK;
+                    placement[Bitboards.square(row, col++)] =
+                        piece(side, type);
+                }
+            }
+            if (row != 7 || col != 8) {
+                throw bad("FEN needs 8 rows of 8 squares");
+            }
+            checkMaterial();
+        }
+
+        private Piece piece(Side side, int type) {
+            int n = counts[side.ordinal()][type]++;
+            if (n >= pool[side.ordinal()][type].length) {
+                throw bad("Too many pieces");
+            }
+            Piece p = pool[side.ordinal()][type][n];
+            if (p == null) {
+                p = ChessUtils.getPieceOfType(
+                        ChessPiece.ChessPieceType.values()[type], side);
+                pool[side.ordinal()][type][n] = p;
+            }
+            return p;
+        }
+
+        // rejects positions no game can reach and the boards cannot hold
+        private void checkMaterial() {
+            int king = ChessPiece.ChessPieceType.KING.ordinal();
+            int pawn = ChessPiece.ChessPieceType.PAWN.ordinal();
+            for (int side = 0; side < 2; side++) {
+                if (counts[side][king] != 1) {
+                    throw bad("Each side needs exactly one king");
+                }
+                int promoted = 0;
+                for (int type = 0; type < START_COUNTS.length; type++) {
+                    promoted += Math.max(0,
+                            counts[side][type] - START_COUNTS[type]);
+                }
+                if (promoted > START_COUNTS[pawn] - counts[side][pawn]) {
+                    throw bad("Too many pieces");
+                }
+            }
+            for (int col = 0; col < 8; col++) {
+                if (placement[col] instanceof Pawn
+                        || placement[56 + col] instanceof Pawn) {
+                    throw bad("Pawn on the first or last row");
+                }
+            }
+        }
+
+        private void parseSide() {
+            char c = pos < end ? text[pos++] : ' ';
+            if (c == 'w') {
+                sideToMove = Side.WHITE;
+            } else if (c == 'b') {
+                sideToMove = Side.BLACK;
+            } else {
+                throw bad("Bad side to move");
+            }
+            endOfField();
+        }
+
+        private void parseCastling() {
+            castlingRights = 0;
+            if (pos < end && text[pos] == '-') {
+                pos++;
+                endOfField();
+                return;
+            }
+            int start = pos;
+            for (; pos < end && !isSpace(text[pos]); pos++) {
+                char c = text[pos];
+                Side side = Character.isUpperCase(c) ? Side.WHITE : Side.BLACK;
+                char right = Character.toLowerCase(c);
+                if (right != 'k' && right != 'q') {
+                    throw bad("Bad castling rights");
+                }
+                if (canCastle(side, right == 'k')) {
+                    castlingRights |= BitboardChessBoard.castlingBit(
+                            side.ordinal(), right == 'k');
+                }
+            }
+            if (pos == start) {
+                throw bad("Missing castling rights");
+            }
+        }
+
+        // rights whose king or rook has left home can never be used, and
+        // are dropped so they don't end up in the hash key
+        private boolean canCastle(Side side, boolean kingside) {
+            int backRow = side.getBackRow();
+            Piece king = placement[Bitboards.square(backRow, 4)];
+            Piece rook = placement[Bitboards.square(backRow,
+                    kingside ? 7 : 0)];
+            return king instanceof King && king.getSide() == side
+                && rook instanceof Rook && rook.getSide() == side;
+        }
+
+        private void parseEnPassant() {
+            enPassantSquare = -1;
+            if (pos < end && text[pos] == '-') {
+                pos++;
+                endOfField();
+                return;
+            }
+            if (end - pos < 2 || text[pos] < 'a' || text[pos] > 'h') {
+                throw bad("Bad en passant square");
+            }
+            int col = text[pos] - 'a';
+            // the square behind a pawn of the side that just moved
+            int row = sideToMove == Side.BLACK ? 5 : 2;
+            if (text[pos + 1] != '8' - row) {
+                throw bad("Bad en passant square");
+            }
+            pos += 2;
+            endOfField();
+
+            int square = Bitboards.square(row, col);
+            int victim = row == 5 ? square - 8 : square + 8;
+            Piece pawn = placement[victim];
+            if (!(pawn instanceof Pawn) || pawn.getSide() == sideToMove
+                    || placement[square] != null
+                    || placement[2 * square - victim] != null) {
+                throw bad("No pawn can be taken en passant");
+            }
+            enPassantSquare = square;
+        }
+
+        private int parseNumber() {
+            int n = 0;
+            for (; pos < end && isDigit(text[pos]); pos++) {
+                if (n > (Integer.MAX_VALUE - 9) / 10) {
+                    throw bad("Move number too large");
+                }
+                n = n * 10 + text[pos] - '0';
+            }
+            endOfField();
+            return n;
+        }
+
+        private void endOfField() {
+            if (pos < end && !isSpace(text[pos])) {
+                throw bad("Unexpected '" + text[pos] + "'");
+            }
+        }
+
+        private void skipSpaces() {
+            while (pos < end && isSpace(text[pos])) {
+                pos++;
+            }
+        }
+
+        private static boolean isSpace(char c) {
+            return c == ' ' || c == '\t';
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private IllegalArgumentException bad(String problem) {
+            return new IllegalArgumentException(
+                problem + ": " + new String(text, 0, end));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package model.chess;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Reads positions one FEN per line from a stream, for loading test suites
+ * and benchmark sets of millions of positions. Lines are collected in a
+ * reused character buffer and handed to one reused Fen.Parser, and each
+ * position is loaded into a board the caller supplies, so nothing is
+ * allocated per line once the buffers have grown to the longest line.
+ *
+ * Blank lines and lines starting with # are skipped. Text after the move
+ * clocks, such as EPD operations, is ignored.
+ */
+public class FenReader implements Closeable {
+
+    private final Reader in;
+    private final char[] buffer = new char[1 << 16];
+    private int bufferPos;
+    private int bufferEnd;
+
+    private char[] line = new char[128];
+    private int lineLength;
+    private int lineNumber;
+
+    private final Fen.Parser parser = new Fen.Parser();
+
+    public FenReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Opens a file of FEN lines. FEN is plain ASCII, which ISO-8859-1
+     * decodes without any checks.
+     *
+     * @param file the file to read
+     * @return a reader at the start of the file
+     */
+    public static FenReader open(Path file) throws IOException {
+        return new FenReader(new InputStreamReader(
+                    Files.newInputStream(file), StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Loads the next position into board, replacing whatever it held along
+     * with its move history
+     *
+     * @param board the board to reuse
+     * @return false when there are no more positions
+     * @throws IllegalArgumentException naming the line if it is not a valid
+     * FEN
+     */
+    public boolean readInto(BitboardChessBoard board) throws IOException {
+        while (readLine()) {
+            if (isSkipped()) {
+                continue;
+            }
+            try {
+                parser.parse(line, lineLength);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                    "Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+            board.setPosition(parser.placement, parser.sideToMove,
+                    parser.castlingRights, parser.enPassantSquare,
+                    parser.halfmoveClock, parser.fullmoveNumber);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of the line the last position was read from
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean isSkipped() {
+        int i = 0;
+        while (i < lineLength && (line[i] == ' ' || line[i] == '\t')) {
+            i++;
+        }
+        return i == lineLength || line[i] == '#';
+    }
+
+    // copies the next line, without its terminator, to the start of line
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        boolean readAny = false;
+        while (true) {
+            if (bufferPos == bufferEnd) {
+                bufferEnd = in.read(buffer);
+                bufferPos = 0;
+                if (bufferEnd <= 0) {
+                    bufferEnd = 0;
+                    if (readAny) {
+                        lineNumber++;
+                    }
+                    return readAny;
+                }
+            }
+            readAny = true;
+            char c = buffer[bufferPos++];
+            if (c == '\n') {
+                lineNumber++;
+                return true;
+            } else if (c != '\r') {
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[lineLength++] = c;
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package model.chess;
+
+import java.util.Arrays;
+
+/**
+ * Per-thread pool of MoveLists, one per ply, so code that walks the move
+ * tree can generate moves at every node without allocating. Lists are
+ * created the first time a ply is reached and reused from then on.
+ *
+ * A list handed out for a ply is only valid until the same thread asks
+ * for that ply again.
+ */
+public class MoveArena {
+
+    private static final ThreadLocal<MoveArena> CURRENT =
+        ThreadLocal.withInitial(MoveArena::new);
+
+    private MoveList[] lists = new MoveList[64];
+
+    /**
+     * @return the arena of the calling thread
+     */
+    public static MoveArena get() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @param ply distance from the root of the tree being walked
+     * @return the empty list for ply
+     */
+    public MoveList list(int ply) {
+        if (ply >= lists.length) {
+            lists = Arrays.copyOf(lists, Math.max(ply + 1, lists.length * 2));
+        }
+        if (lists[ply] == null) {
+            lists[ply] = new MoveList();
+        }
+        lists[ply].clear();
+        return lists[ply];
+    }
+}
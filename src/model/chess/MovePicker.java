@@ -0,0 +1,228 @@
+package model.chess;
+
+/**
+ * Hands out the legal moves of a BitboardChessBoard one at a time, best
+ * candidates first: the hash move, captures (most valuable victim, least
+ * valuable attacker first), promotions, killer moves, the remaining quiet
+ * moves and last the captures that static exchange evaluation says lose
+ * material. Each stage is generated only when the previous one has run
+ * out, so a search that cuts off early never pays for the rest.
+ *
+ * After resetCaptures the picker hands out only the winning and even
+ * captures and the queen promotions, for a quiescence search, and never
+ * generates a quiet move at all.
+ *
+ * A picker belongs to one ply of a search and is reused through reset. The
+ * board must be in the same position whenever next is called.
+ */
+public class MovePicker {
+
+    private static final int HASH_MOVE = 0;
+    private static final int GENERATE_CAPTURES = 1;
+    private static final int CAPTURES = 2;
+    private static final int GENERATE_PROMOTIONS = 3;
+    private static final int PROMOTIONS = 4;
+    private static final int FIRST_KILLER = 5;
+    private static final int SECOND_KILLER = 6;
+    private static final int GENERATE_QUIETS = 7;
+    private static final int QUIETS = 8;
+    private static final int BAD_CAPTURES = 9;
+    private static final int DONE = 10;
+
+    // by ChessPieceType ordinal, only used to order captures
+    private static final int[] VALUES = {1, 5, 3, 3, 9, 100};
+
+    private final BitboardChessBoard board;
+    private final MoveList moves = new MoveList();
+    private final int[] scores = new int[256];
+    private final int[] badCaptures = new int[256];
+    private int badCaptureCount;
+
+    private int stage;
+    private int index;
+    private int hashMove;
+    private int killer1;
+    private int killer2;
+    private boolean capturesOnly;
+
+    public MovePicker(BitboardChessBoard board) {
+        this.board = board;
+        stage = DONE;
+    }
+
+    /**
+     * Starts over for the board's current position
+     *
+     * @param hashMove best move remembered for this position, or
+     * PackedMove.NONE
+     * @param killer1 a quiet move that caused a cutoff at this ply, or
+     * PackedMove.NONE
+     * @param killer2 another such move, or PackedMove.NONE
+     */
+    public void reset(int hashMove, int killer1, int killer2) {
+        this.hashMove = hashMove;
+        this.killer1 = isKillerCandidate(killer1) ? killer1 : PackedMove.NONE;
+        this.killer2 = isKillerCandidate(killer2) && killer2 != killer1
+            ? killer2 : PackedMove.NONE;
+        badCaptureCount = 0;
+        capturesOnly = false;
+        stage = HASH_MOVE;
+    }
+
+    /**
+     * Starts over for the board's current position, handing out only the
+     * captures that don't lose material and the promotions to a queen
+     */
+    public void resetCaptures() {
+        hashMove = PackedMove.NONE;
+        killer1 = PackedMove.NONE;
+        killer2 = PackedMove.NONE;
+        badCaptureCount = 0;
+        capturesOnly = true;
+        stage = GENERATE_CAPTURES;
+    }
+
+    /**
+     * @return the next legal move, or PackedMove.NONE when there are no
+     * more
+     */
+    public int next() {
+        while (true) {
+            switch (stage) {
+                case HASH_MOVE:
+                    stage = GENERATE_CAPTURES;
+                    if (board.isLegal(hashMove)) {
+                        return hashMove;
+                    }
+                    break;
+                case GENERATE_CAPTURES:
+                    generate(BitboardChessBoard.CAPTURES);
+                    scoreCaptures();
+                    stage = CAPTURES;
+                    break;
+                case CAPTURES:
+                    int capture = pickBest();
+                    if (capture == PackedMove.NONE) {
+                        stage = GENERATE_PROMOTIONS;
+                    } else if (isLosing(capture)) {
+                        if (!capturesOnly) {
+                            badCaptures[badCaptureCount++] = capture;
+                        }
+                    } else {
+                        return capture;
+                    }
+                    break;
+                case GENERATE_PROMOTIONS:
+                    generate(BitboardChessBoard.PROMOTIONS);
+                    stage = PROMOTIONS;
+                    break;
+                case PROMOTIONS:
+                    int promotion = pickInOrder();
+                    if (promotion == PackedMove.NONE) {
+                        stage = capturesOnly ? DONE : FIRST_KILLER;
+                    } else if (!capturesOnly || PackedMove.promotionType(
+                                promotion) == ChessPiece.ChessPieceType.QUEEN) {
+                        return promotion;
+                    }
+                    break;
+                case FIRST_KILLER:
+                    stage = SECOND_KILLER;
+                    if (board.isLegal(killer1)) {
+                        return killer1;
+                    }
+                    break;
+                case SECOND_KILLER:
+                    stage = GENERATE_QUIETS;
+                    if (board.isLegal(killer2)) {
+                        return killer2;
+                    }
+                    break;
+                case GENERATE_QUIETS:
+                    generate(BitboardChessBoard.QUIETS);
+                    stage = QUIETS;
+                    break;
+                case QUIETS:
+                    int quiet = pickInOrder();
+                    if (quiet != PackedMove.NONE) {
+                        return quiet;
+                    }
+                    index = 0;
+                    stage = BAD_CAPTURES;
+                    break;
+                case BAD_CAPTURES:
+                    if (index < badCaptureCount) {
+                        return badCaptures[index++];
+                    }
+                    stage = DONE;
+                    break;
+                default:
+                    return PackedMove.NONE;
+            }
+        }
+    }
+
+    private void generate(int kinds) {
+        moves.clear();
+        index = 0;
+        board.generateLegalMoves(board.getSideToMove(), moves, kinds);
+    }
+
+    private void scoreCaptures() {
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            int victim = PackedMove.flags(move) == PackedMove.EN_PASSANT
+                ? ChessPiece.ChessPieceType.PAWN.ordinal()
+                : board.typeAt(PackedMove.to(move));
+            int attacker = board.typeAt(PackedMove.from(move));
+            scores[i] = VALUES[victim] * 16 - VALUES[attacker];
+        }
+    }
+
+    // taking a piece worth at least the capturer can't lose material, so
+    // only the rest need the exchange worked out
+    private boolean isLosing(int capture) {
+        int victim = PackedMove.flags(capture) == PackedMove.EN_PASSANT
+            ? ChessPiece.ChessPieceType.PAWN.ordinal()
+            : board.typeAt(PackedMove.to(capture));
+        int attacker = board.typeAt(PackedMove.from(capture));
+        return VALUES[victim] < VALUES[attacker] && board.see(capture) < 0;
+    }
+
+    // selection sort one step at a time: only moves actually searched are
+    // ever put in order
+    private int pickBest() {
+        while (index < moves.size()) {
+            int best = index;
+            for (int i = index + 1; i < moves.size(); i++) {
+                if (scores[i] > scores[best]) {
+                    best = i;
+                }
+            }
+            int move = moves.get(best);
+            moves.set(best, moves.get(index));
+            scores[best] = scores[index];
+            index++;
+            if (move != hashMove) {
+                return move;
+            }
+        }
+        return PackedMove.NONE;
+    }
+
+    private int pickInOrder() {
+        while (index < moves.size()) {
+            int move = moves.get(index++);
+            if (move != hashMove && move != killer1 && move != killer2) {
+                return move;
+            }
+        }
+        return PackedMove.NONE;
+    }
+
+    // captures and promotions are handed out in their own stages, and the
+    // hash move before everything
+    private boolean isKillerCandidate(int killer) {
+        return killer != hashMove && !PackedMove.isCapture(killer)
+            && !PackedMove.isPromotion(killer);
+    }
+}
@@ -0,0 +1,97 @@
+package model.chess;
+
+import model.PieceType;
+
+/**
+ * Encodes a chess move in the low 16 bits of an int: from square in bits
+ * 0-5, destination square in bits 6-11 and a 4-bit flag in bits 12-15.
+ * Squares follow Bitboards. 0 is never a valid move and can be used as
+ * "no move".
+ *
+ * Flag values follow the usual from-to-flags layout: bit 2 marks captures
+ * and bit 3 marks promotions, whose low two bits give the piece.
+ */
+public class PackedMove {
+
+    public static final int NONE = 0;
+
+    public static final int QUIET = 0;
+    public static final int DOUBLE_PAWN_PUSH = 1;
+    public static final int KING_CASTLE = 2;
+    public static final int QUEEN_CASTLE = 3;
+    public static final int CAPTURE = 4;
+    public static final int EN_PASSANT = 5;
+    public static final int PROMOTION = 8;
+    public static final int PROMOTION_CAPTURE = 12;
+
+    private static final ChessPiece.ChessPieceType[] PROMOTION_TYPES = {
+        ChessPiece.ChessPieceType.KNIGHT, ChessPiece.ChessPieceType.BISHOP,
+        ChessPiece.ChessPieceType.ROOK, ChessPiece.ChessPieceType.QUEEN
+    };
+
+    public static int of(int from, int to, int flags) {
+        return from | (to << 6) | (flags << 12);
+    }
+
+    /**
+     * @param promotingTo KNIGHT, BISHOP, ROOK or QUEEN
+     */
+    public static int promotion(int from, int to, boolean capture,
+            PieceType promotingTo) {
+        int piece = 3;
+        for (int i = 0; i < PROMOTION_TYPES.length; i++) {
+            if (PROMOTION_TYPES[i] == promotingTo) {
+                piece = i;
+            }
+        }
+        return of(from, to,
+                (capture ? PROMOTION_CAPTURE : PROMOTION) | piece);
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    public static int flags(int move) {
+        return (move >>> 12) & 15;
+    }
+
+    public static boolean isCapture(int move) {
+        return (flags(move) & CAPTURE) != 0;
+    }
+
+    public static boolean isPromotion(int move) {
+        return (flags(move) & PROMOTION) != 0;
+    }
+
+    public static boolean isCastle(int move) {
+        int flags = flags(move);
+        return flags == KING_CASTLE || flags == QUEEN_CASTLE;
+    }
+
+    /**
+     * @return the piece a promotion turns into, or null for other moves
+     */
+    public static ChessPiece.ChessPieceType promotionType(int move) {
+        return isPromotion(move) ? PROMOTION_TYPES[flags(move) & 3] : null;
+    }
+
+    /**
+     * @return the move in the same form as Move.toString
+     */
+    public static String toString(int move) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(Bitboards.position(from(move)));
+        sb.append("->");
+        sb.append(Bitboards.position(to(move)));
+        if (isPromotion(move)) {
+            sb.append("=");
+            sb.append(promotionType(move));
+        }
+        return sb.toString();
+    }
+}
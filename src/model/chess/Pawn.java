@@ -39,14 +39,14 @@ public class Pawn  extends ChessPiece {
                 Move moveToAdd;
                 if (destRow == 0 || destRow == 7) {
                     moveToAdd = new PromotionMove(curPos,
-                            new Position(destRow, destCol), false,
+                            Position.of(destRow, destCol), false,
                             cannotCapture, mustCapture);
                 } else if (mustCapture) {
                     moveToAdd = new PawnCaptureMove(curPos,
-                            new Position(destRow, destCol), false,
+                            Position.of(destRow, destCol), false,
                             cannotCapture, mustCapture);
                 } else {
-                    moveToAdd = new Move(curPos, new Position(destRow, destCol),
+                    moveToAdd = new Move(curPos, Position.of(destRow, destCol),
                             false, cannotCapture, mustCapture);
                 }
                 moves.add(moveToAdd);
@@ -54,7 +54,7 @@ public class Pawn  extends ChessPiece {
         }
 
         if (curRow == initialRow) {
-            moves.add(new Move(curPos, new Position(curRow + dy * 2, curCol),
+            moves.add(new Move(curPos, Position.of(curRow + dy * 2, curCol),
                         false, true, false));
         }
 
@@ -0,0 +1,129 @@
+package model.chess;
+
+import model.Side;
+
+/**
+ * Material values and piece-square tables for judging chess positions, in
+ * centipawns. The tables are the common ones from Tomasz Michniewski's
+ * simplified evaluation function. They are written from White's side with
+ * the eighth row first, which is the order of the Bitboards squares, and
+ * Black reads them upside down.
+ *
+ * The boards add these up as pieces are placed and removed, so an
+ * evaluation can read the totals instead of scanning the board.
+ */
+public class PieceSquareTables {
+
+    // by ChessPieceType ordinal; the king is never captured, so it is
+    // worth nothing
+    private static final int[] MATERIAL = {100, 500, 320, 330, 900, 0};
+
+    private static final int[] PAWN = {
+         0,   0,   0,   0,   0,   0,   0,   0,
+        50,  50,  50,  50,  50,  50,  50,  50,
+        10,  10,  20,  30,  30,  20,  10,  10,
+         5,   5,  10,  25,  25,  10,   5,   5,
+         0,   0,   0,  20,  20,   0,   0,   0,
+         5,  -5, -10,   0,   0, -10,  -5,   5,
+         5,  10,  10, -20, -20,  10,  10,   5,
+         0,   0,   0,   0,   0,   0,   0,   0
+    };
+
+    private static final int[] ROOK = {
+         0,   0,   0,   0,   0,   0,   0,   0,
+         5,  10,  10,  10,  10,  10,  10,   5,
+        -5,   0,   0,   0,   0,   0,   0,  -5,
+        -5,   0,   0,   0,   0,   0,   0,  -5,
+        -5,   0,   0,   0,   0,   0,   0,  -5,
+        -5,   0,   0,   0,   0,   0,   0,  -5,
+        -5,   0,   0,   0,   0,   0,   0,  -5,
+         0,   0,   0,   5,   5,   0,   0,   0
+    };
+
+    private static final int[] KNIGHT = {
+       -50, -40, -30, -30, -30, -30, -40, -50,
+       -40, -20,   0,   0,   0,   0, -20, -40,
+       -30,   0,  10,  15,  15,  10,   0, -30,
+       -30,   5,  15,  20,  20,  15,   5, -30,
+       -30,   0,  15,  20,  20,  15,   0, -30,
+       -30,   5,  10,  15,  15,  10,   5, -30,
+       -40, -20,   0,   5,   5,   0, -20, -40,
+       -50, -40, -30, -30, -30, -30, -40, -50
+    };
+
+    private static final int[] BISHOP = {
+       -20, -10, -10, -10, -10, -10, -10, -20,
+       -10,   0,   0,   0,   0,   0,   0, -10,
+       -10,   0,   5,  10,  10,   5,   0, -10,
+       -10,   5,   5,  10,  10,   5,   5, -10,
+       -10,   0,  10,  10,  10,  10,   0, -10,
+       -10,  10,  10,  10,  10,  10,  10, -10,
+       -10,   5,   0,   0,   0,   0,   5, -10,
+       -20, -10, -10, -10, -10, -10, -10, -20
+    };
+
+    private static final int[] QUEEN = {
+       -20, -10, -10,  -5,  -5, -10, -10, -20,
+       -10,   0,   0,   0,   0,   0,   0, -10,
+       -10,   0,   5,   5,   5,   5,   0, -10,
+        -5,   0,   5,   5,   5,   5,   0,  -5,
+         0,   0,   5,   5,   5,   5,   0,  -5,
+       -10,   5,   5,   5,   5,   5,   0, -10,
+       -10,   0,   5,   0,   0,   0,   0, -10,
+       -20, -10, -10,  -5,  -5, -10, -10, -20
+    };
+
+    // the middlegame table: stay behind the pawns, castled
+    private static final int[] KING = {
+       -30, -40, -40, -50, -50, -40, -40, -30,
+       -30, -40, -40, -50, -50, -40, -40, -30,
+       -30, -40, -40, -50, -50, -40, -40, -30,
+       -30, -40, -40, -50, -50, -40, -40, -30,
+       -20, -30, -30, -40, -40, -30, -30, -20,
+       -10, -20, -20, -20, -20, -20, -20, -10,
+        20,  20,   0,   0,   0,   0,  20,  20,
+        20,  30,  10,   0,   0,  10,  30,  20
+    };
+
+    // by ChessPieceType ordinal
+    private static final int[][] TABLES =
+        {PAWN, ROOK, KNIGHT, BISHOP, QUEEN, KING};
+
+    // every table for both sides in one array, Black's already turned
+    // around, so the boards pay a single lookup per piece moved
+    private static final int[] SCORES = new int[2 * TABLES.length * 64];
+
+    static {
+        for (int side = 0; side < 2; side++) {
+            for (int type = 0; type < TABLES.length; type++) {
+                for (int sq = 0; sq < 64; sq++) {
+                    SCORES[index(type, side, sq)] = TABLES[type]
+                        [side == Side.WHITE.ordinal() ? sq : sq ^ 56];
+                }
+            }
+        }
+    }
+
+    /**
+     * @param type ChessPieceType ordinal
+     * @return what a piece of that type is worth
+     */
+    public static int material(int type) {
+        return MATERIAL[type];
+    }
+
+    /**
+     * @param type ChessPieceType ordinal
+     * @param side Side ordinal
+     * @param sq square as in Bitboards
+     * @return the bonus or penalty for a piece of that type and side
+     * standing on sq
+     */
+    public static int square(int type, int side, int sq) {
+        return SCORES[index(type, side, sq)];
+    }
+
+    private static int index(int type, int side, int sq) {
+        return (side * TABLES.length + type) << 6 | sq;
+    }
+}
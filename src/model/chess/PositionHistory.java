@@ -0,0 +1,98 @@
+package model.chess;
+
+import java.util.Arrays;
+
+/**
+ * The Zobrist keys of the positions a board has been through, one pushed
+ * before every move and popped when it is taken back, for finding
+ * repetitions.
+ *
+ * A position can only repeat one seen since the last capture or pawn move,
+ * with the same side to move, so a check looks back at every second key
+ * and no further than the halfmove clock. Most positions have never been
+ * seen before, though, and a small table counting the keys on the stack by
+ * their low bits answers those in one lookup, without looking back at all.
+ */
+class PositionHistory {
+
+    private static final int FILTER_BITS = 12;
+    private static final int FILTER_MASK = (1 << FILTER_BITS) - 1;
+
+    private long[] keys;
+    private int size;
+
+    // how many keys on the stack share each value of their low bits
+    private final int[] seen;
+
+    PositionHistory() {
+        keys = new long[128];
+        seen = new int[1 << FILTER_BITS];
+    }
+
+    /**
+     * Creates a copy of h that grows and shrinks independently
+     *
+     * @param h the history to copy
+     */
+    PositionHistory(PositionHistory h) {
+        keys = h.keys.clone();
+        size = h.size;
+        seen = h.seen.clone();
+    }
+
+    /**
+     * Records the position a move is about to be played from
+     *
+     * @param key its Zobrist key
+     */
+    void push(long key) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        keys[size++] = key;
+        seen[(int) key & FILTER_MASK]++;
+    }
+
+    /**
+     * Forgets the position most recently pushed, when its move is taken back
+     */
+    void pop() {
+        seen[(int) keys[--size] & FILTER_MASK]--;
+    }
+
+    /**
+     * @return the number of positions on the stack
+     */
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        while (size > 0) {
+            pop();
+        }
+    }
+
+    /**
+     * Counts the earlier occurrences of the current position, stopping once
+     * max have been found
+     *
+     * @param key Zobrist key of the current position
+     * @param halfmoveClock moves played since the last capture or pawn move
+     * @param max the most occurrences the caller cares about
+     * @return how many times the position was seen before, at most max
+     */
+    int repetitions(long key, int halfmoveClock, int max) {
+        if (seen[(int) key & FILTER_MASK] == 0) {
+            return 0;
+        }
+        int found = 0;
+        int oldest = Math.max(0, size - halfmoveClock);
+        for (int i = size - 2; i >= oldest; i -= 2) {
+            if (keys[i] == key && ++found == max) {
+                break;
+            }
+        }
+        return found;
+    }
+}
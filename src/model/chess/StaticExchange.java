@@ -0,0 +1,164 @@
+package model.chess;
+
+/**
+ * Static exchange evaluation: what a move wins or loses on its destination
+ * square if both sides keep recapturing there, each with its least valuable
+ * piece, and either may stop when going on would cost it. Sliders lined up
+ * behind a capturer join in as the pieces in front of them are used up.
+ *
+ * Everything is worked out on bitboards of the position; nothing is played
+ * on a board. Pins and checks are not considered.
+ */
+class StaticExchange {
+
+    private static final int PAWN = ChessPiece.ChessPieceType.PAWN.ordinal();
+    private static final int ROOK = ChessPiece.ChessPieceType.ROOK.ordinal();
+    private static final int KNIGHT =
+        ChessPiece.ChessPieceType.KNIGHT.ordinal();
+    private static final int BISHOP =
+        ChessPiece.ChessPieceType.BISHOP.ordinal();
+    private static final int QUEEN = ChessPiece.ChessPieceType.QUEEN.ordinal();
+    private static final int KING = ChessPiece.ChessPieceType.KING.ordinal();
+
+    // types from least to most valuable, the order attackers are tried in
+    private static final int[] CHEAPEST_FIRST =
+        {PAWN, KNIGHT, BISHOP, ROOK, QUEEN, KING};
+
+    // the king can never be taken, so it counts for more than everything
+    // else put together
+    private static final int KING_VALUE = 20000;
+
+    /**
+     * Length of the gain array see needs: one entry per capture, and there
+     * are at most 32 pieces to capture with
+     */
+    static final int MAX_CAPTURES = 32;
+
+    /**
+     * @param pieces bitboards by [side][ChessPieceType ordinal]
+     * @param from square of the moving piece
+     * @param to its destination
+     * @param capturedSquare square of the piece it takes: to, except for
+     * en passant
+     * @param promotion ChessPieceType ordinal of the piece a pawn becomes,
+     * or -1
+     * @param gain scratch space of MAX_CAPTURES entries, so that nothing is
+     * allocated per call
+     * @return the material the side making the move can count on winning,
+     * in PieceSquareTables units; negative if the move loses material
+     */
+    static int see(long[][] pieces, int from, int to, int capturedSquare,
+            int promotion, int[] gain) {
+        long occupied = 0L;
+        for (long[] side : pieces) {
+            for (long b : side) {
+                occupied |= b;
+            }
+        }
+        int side = (occupancy(pieces[0]) & (1L << from)) != 0 ? 0 : 1;
+        int moverType = typeAt(pieces[side], from);
+        int capturedType = (occupied & (1L << capturedSquare)) != 0
+            ? typeAt(pieces[1 - side], capturedSquare) : -1;
+
+        // gain[d] is what the side making capture d has won if the
+        // exchange stops right after it
+        gain[0] = capturedType < 0 ? 0 : value(capturedType);
+        int onSquare = value(moverType);
+        if (promotion >= 0) {
+            gain[0] += value(promotion) - value(PAWN);
+            onSquare = value(promotion);
+        }
+
+        occupied &= ~(1L << from) & ~(1L << capturedSquare);
+        long attackers = attackersTo(pieces, to, occupied) & occupied;
+        int d = 0;
+        while (true) {
+            side = 1 - side;
+            long own = attackers & occupancy(pieces[side]);
+            if (own == 0) {
+                break;
+            }
+            int type = -1;
+            long attacker = 0L;
+            for (int t : CHEAPEST_FIRST) {
+                attacker = own & pieces[side][t];
+                if (attacker != 0) {
+                    type = t;
+                    attacker &= -attacker;
+                    break;
+                }
+            }
+            // the king may only take last, on an undefended square
+            if (type == KING
+                    && (attackers & occupancy(pieces[1 - side])) != 0) {
+                break;
+            }
+
+            d++;
+            gain[d] = onSquare - gain[d - 1];
+            onSquare = value(type);
+            occupied &= ~attacker;
+            attackers = (attackers | xRays(pieces, to, occupied, type))
+                & occupied;
+        }
+
+        // going back, each side only makes its capture if that leaves it
+        // better off than stopping
+        while (d > 0) {
+            gain[d - 1] = Math.min(gain[d - 1], -gain[d]);
+            d--;
+        }
+        return gain[0];
+    }
+
+    private static int value(int type) {
+        return type == KING ? KING_VALUE : PieceSquareTables.material(type);
+    }
+
+    private static long occupancy(long[] side) {
+        long all = 0L;
+        for (long b : side) {
+            all |= b;
+        }
+        return all;
+    }
+
+    private static int typeAt(long[] side, int sq) {
+        for (int type = 0; type < side.length; type++) {
+            if ((side[type] & (1L << sq)) != 0) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("No piece on square " + sq);
+    }
+
+    // every piece of either side attacking sq through occupancy occ
+    private static long attackersTo(long[][] pieces, int sq, long occ) {
+        long[] w = pieces[0];
+        long[] b = pieces[1];
+        return (Bitboards.PAWN_ATTACKS[1][sq] & w[PAWN])
+            | (Bitboards.PAWN_ATTACKS[0][sq] & b[PAWN])
+            | (Bitboards.KNIGHT_ATTACKS[sq] & (w[KNIGHT] | b[KNIGHT]))
+            | (Bitboards.KING_ATTACKS[sq] & (w[KING] | b[KING]))
+            | (Bitboards.rookAttacks(sq, occ)
+                & (w[ROOK] | b[ROOK] | w[QUEEN] | b[QUEEN]))
+            | (Bitboards.bishopAttacks(sq, occ)
+                & (w[BISHOP] | b[BISHOP] | w[QUEEN] | b[QUEEN]));
+    }
+
+    // sliders uncovered on sq after a piece of type moved off its line
+    private static long xRays(long[][] pieces, int sq, long occ, int type) {
+        long found = 0L;
+        if (type == PAWN || type == BISHOP || type == QUEEN) {
+            found |= Bitboards.bishopAttacks(sq, occ)
+                & (pieces[0][BISHOP] | pieces[1][BISHOP]
+                    | pieces[0][QUEEN] | pieces[1][QUEEN]);
+        }
+        if (type == ROOK || type == QUEEN) {
+            found |= Bitboards.rookAttacks(sq, occ)
+                & (pieces[0][ROOK] | pieces[1][ROOK]
+                    | pieces[0][QUEEN] | pieces[1][QUEEN]);
+        }
+        return found;
+    }
+}
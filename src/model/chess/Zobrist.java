@@ -0,0 +1,75 @@
+package model.chess;
+
+import java.util.Random;
+import model.Piece;
+import model.Side;
+
+/**
+ * Random keys for Zobrist hashing. A position's key is the XOR of the keys
+ * of everything in it: each piece on its square, each castling right still
+ * held, the column of a pawn that can be captured en passant and, when Black
+ * is to move, SIDE. Boards keep their key up to date by XORing keys in and
+ * out as the position changes.
+ *
+ * Keys come from a fixed seed so they are the same on every run.
+ */
+public class Zobrist {
+
+    public static final long SIDE;
+
+    private static final long[][][] PIECES = new long[2][6][64];
+    private static final long[] CASTLING = new long[4];
+    private static final long[] EN_PASSANT = new long[8];
+
+    static {
+        Random random = new Random(20151102L);
+        for (long[][] side : PIECES) {
+            for (long[] type : side) {
+                for (int sq = 0; sq < 64; sq++) {
+                    type[sq] = random.nextLong();
+                }
+            }
+        }
+        for (int i = 0; i < CASTLING.length; i++) {
+            CASTLING[i] = random.nextLong();
+        }
+        for (int i = 0; i < EN_PASSANT.length; i++) {
+            EN_PASSANT[i] = random.nextLong();
+        }
+        SIDE = random.nextLong();
+    }
+
+    /**
+     * @param square a square as numbered by Bitboards
+     */
+    public static long piece(Piece p, int square) {
+        return PIECES[p.getSide().ordinal()]
+            [((ChessPiece.ChessPieceType) p.getType()).ordinal()][square];
+    }
+
+    public static long castling(Side s, boolean kingside) {
+        return CASTLING[s.ordinal() * 2 + (kingside ? 0 : 1)];
+    }
+
+    /**
+     * @param rights castling rights as bits, bit side * 2 for kingside and
+     * side * 2 + 1 for queenside
+     * @return the combined key of every right set in rights
+     */
+    public static long castlingRights(int rights) {
+        long key = 0L;
+        for (int i = 0; i < CASTLING.length; i++) {
+            if ((rights & (1 << i)) != 0) {
+                key ^= CASTLING[i];
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @param col the column of the pawn that may be captured en passant
+     */
+    public static long enPassant(int col) {
+        return EN_PASSANT[col];
+    }
+}
@@ -0,0 +1,99 @@
+package tools;
+
+import java.lang.management.ManagementFactory;
+import model.Side;
+import model.chess.BitboardChessBoard;
+import model.chess.ChessBoard;
+import model.chess.Fen;
+import model.chess.MoveArena;
+import model.chess.MoveList;
+
+/**
+ * Measures how many bytes each way of generating moves allocates per call,
+ * using the HotSpot per-thread allocation counter. The packed generator
+ * writing into a MoveArena list is expected to allocate nothing once warm;
+ * the program exits with status 1 if it allocates more than a few bytes
+ * over all its measured calls.
+ *
+ * Usage: AllocationBenchmark [iterations]
+ */
+public class AllocationBenchmark {
+
+    private static final String KIWIPETE =
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq -";
+
+    private static final int DEFAULT_ITERATIONS = 100000;
+
+    // runs before measuring, enough for the JIT to compile the generator
+    // whatever the number of measured iterations
+    private static final int WARM_UP_RUNS = 50000;
+
+    // total bytes the packed paths may allocate and still pass: the
+    // allocation counter itself, or the odd object made while the JIT
+    // replaces a method, is not the generator allocating
+    private static final long ALLOWED_BYTES = 1024;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Runs body iterations times after WARM_UP_RUNS unmeasured runs
+     *
+     * @return bytes allocated by the measured runs together
+     */
+    private static long bytesAllocated(Runnable body, int iterations) {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            body.run();
+        }
+        long thread = Thread.currentThread().getId();
+        long before = THREADS.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < iterations; i++) {
+            body.run();
+        }
+        long after = THREADS.getThreadAllocatedBytes(thread);
+        return after - before;
+    }
+
+    private static void print(String name, long bytes, int iterations) {
+        System.out.printf("%-40s %10.1f bytes/call, %d bytes in total%n",
+                name, bytes / (double) iterations, bytes);
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0
+            ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        ChessBoard chessBoard = new ChessBoard();
+        print("ChessBoard.generateMovesForSide (start)",
+                bytesAllocated(() -> chessBoard.generateMovesForSide(
+                        Side.WHITE), iterations), iterations);
+
+        BitboardChessBoard board = Fen.toBitboardChessBoard(KIWIPETE);
+        print("BitboardChessBoard.generateMovesForSide",
+                bytesAllocated(() -> board.generateMovesForSide(Side.WHITE),
+                    iterations), iterations);
+
+        long arena = bytesAllocated(() -> board.generateLegalMoves(
+                    Side.WHITE, MoveArena.get().list(0)), iterations);
+        print("generateLegalMoves into MoveArena", arena, iterations);
+
+        long makeUnmake = bytesAllocated(() -> {
+            MoveList moves = MoveArena.get().list(0);
+            board.generateLegalMoves(board.getSideToMove(), moves);
+            for (int i = 0; i < moves.size(); i++) {
+                board.makeMove(moves.get(i));
+                board.generateLegalMoves(board.getSideToMove(),
+                        MoveArena.get().list(1));
+                board.unmakeMove();
+            }
+        }, iterations);
+        print("two-ply walk with make/unmake", makeUnmake, iterations);
+
+        boolean allocationFree = arena + makeUnmake <= ALLOWED_BYTES;
+        System.out.println(allocationFree
+            ? "Steady-state packed generation is allocation-free"
+            : "Packed generation ALLOCATES");
+        System.exit(allocationFree ? 0 : 1);
+    }
+}
@@ -0,0 +1,543 @@
+package tools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import model.Move;
+import model.Piece;
+import model.PieceType;
+import model.Position;
+import model.Side;
+import model.chess.BitboardChessBoard;
+import model.chess.Bitboards;
+import model.chess.ChessBoard;
+import model.chess.ChessPiece;
+import model.chess.Fen;
+import model.chess.FenReader;
+import model.chess.MoveList;
+import model.chess.PackedMove;
+import model.chess.PromotionMove;
+
+/**
+ * Counts the leaf nodes of the legal move tree to a fixed depth. Known
+ * counts for the reference positions make this a correctness check for the
+ * move generators, and nodes per second make it a throughput benchmark.
+ *
+ * Usage:
+ *   Perft [-chess] depth [fen]   count, with divide output per root move
+ *   Perft -threads n depth [fen] the same on a fork/join pool of n threads
+ *   Perft -scaling depth [fen]   speed on 1, 2, 4 ... up to all cores
+ *   Perft -suite [depth]         check every reference position, and
+ *                                the hash keys of the lines from them
+ *   Perft -file depth path       total over every FEN line of a file
+ *
+ * -chess runs the object-model ChessBoard instead of BitboardChessBoard.
+ * With -file a depth of 0 only loads the positions, which measures how
+ * fast they are read.
+ */
+public class Perft {
+
+    private static final PieceType[] PROMOTION_TYPES = {
+        ChessPiece.ChessPieceType.QUEEN, ChessPiece.ChessPieceType.ROOK,
+        ChessPiece.ChessPieceType.BISHOP, ChessPiece.ChessPieceType.KNIGHT
+    };
+
+    /**
+     * Standard test positions, each with its FEN and the expected node
+     * counts from depth 1 up
+     */
+    private static final String[][] REFERENCE = {
+        {Fen.START,
+            "20 400 8902 197281 4865609 119060324"},
+        {"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq -",
+            "48 2039 97862 4085603 193690690"},
+        {"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - -",
+            "14 191 2812 43238 674624 11030083"},
+        {"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq -",
+            "6 264 9467 422333 15833292"},
+        {"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "44 1486 62379 2103487 89941194"},
+        {"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 "
+            + "w - - 0 10",
+            "46 2079 89890 3894594 164075551"}
+    };
+
+    /**
+     * Positions whose en passant square only counts while the pawns beside
+     * it stay put, for checking the hash keys makeMove leaves behind
+     */
+    private static final String[] KEY_POSITIONS = {
+        "2Nk1b2/p4r2/2Q1p3/2p4p/PB1PN1p1/2P5/8/RK6 b - d3 0 61",
+        "4k3/8/8/2pPp3/8/8/8/4K3 w - e6 0 2",
+        "4k3/8/8/8/3pPp2/8/8/4K3 b - e3 0 1"
+    };
+
+    private static final int DEFAULT_SUITE_DEPTH = 4;
+
+    // plies below each position whose keys are checked
+    private static final int KEY_CHECK_DEPTH = 3;
+
+    // one reusable move list per remaining depth
+    private MoveList[] moveLists;
+
+    public Perft(int maxDepth) {
+        moveLists = new MoveList[maxDepth + 1];
+        for (int i = 0; i <= maxDepth; i++) {
+            moveLists[i] = new MoveList();
+        }
+    }
+
+    /**
+     * @return the number of leaf nodes depth plies below the position on b
+     */
+    public long perft(BitboardChessBoard b, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (depth == 1) {
+            return b.countLegalMoves(b.getSideToMove());
+        }
+        MoveList moves = moveLists[depth];
+        moves.clear();
+        b.generateLegalMoves(b.getSideToMove(), moves);
+
+        long nodes = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            b.makeMove(moves.get(i));
+            nodes += perft(b, depth - 1);
+            b.unmakeMove();
+        }
+        return nodes;
+    }
+
+    /**
+     * Counts with ChessBoard's Map-based generator. Each promotion move it
+     * returns stands for all four promotion pieces.
+     *
+     * @return the number of leaf nodes depth plies below the position on b
+     */
+    public static long perft(ChessBoard b, Side s, int depth) {
+        if (depth == 0) {
+            return 1;
+        } else if (depth == 1) {
+            return b.countLegalMoves(s);
+        }
+        Map<Piece, Set<Move>> all = b.generateMovesForSide(s);
+
+        long nodes = 0;
+        Side next = s == Side.WHITE ? Side.BLACK : Side.WHITE;
+        for (Map.Entry<Piece, Set<Move>> e : all.entrySet()) {
+            for (Move m : e.getValue()) {
+                if (!(m instanceof PromotionMove)) {
+                    nodes += playAndCount(b, e.getKey(), m, next, depth);
+                    continue;
+                }
+                for (PieceType type : PROMOTION_TYPES) {
+                    ((PromotionMove) m).setPromotingTo(type);
+                    nodes += playAndCount(b, e.getKey(), m, next, depth);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    private static long playAndCount(ChessBoard b, Piece p, Move m,
+            Side next, int depth) {
+        b.makeMove(p, m);
+        long nodes = perft(b, next, depth - 1);
+        b.unmakeMove();
+        return nodes;
+    }
+
+    /**
+     * Prints the node count below each root move, then the total and the
+     * speed
+     *
+     * @return the total node count
+     */
+    public long divide(BitboardChessBoard b, int depth) {
+        long start = System.nanoTime();
+        MoveList roots = new MoveList();
+        b.generateLegalMoves(b.getSideToMove(), roots);
+
+        long total = 0;
+        for (int i = 0; i < roots.size(); i++) {
+            b.makeMove(roots.get(i));
+            long nodes = perft(b, depth - 1);
+            b.unmakeMove();
+            System.out.println(toAlgebraic(roots.get(i)) + ": " + nodes);
+            total += nodes;
+        }
+        report(total, System.nanoTime() - start);
+        return total;
+    }
+
+    /**
+     * Prints the node count below each root move, then the total and the
+     * speed. Root moves and their replies are counted as separate tasks on
+     * pool, each on its own copy of the board.
+     *
+     * @return the total node count
+     */
+    public static long divide(BitboardChessBoard b, int depth,
+            ForkJoinPool pool) {
+        long start = System.nanoTime();
+        MoveList roots = new MoveList();
+        b.generateLegalMoves(b.getSideToMove(), roots);
+
+        List<PerftTask> tasks = new ArrayList<>();
+        for (int i = 0; i < roots.size(); i++) {
+            PerftTask task = new PerftTask(b, roots.get(i), depth - 1, 1);
+            tasks.add(task);
+            pool.execute(task);
+        }
+
+        long total = 0;
+        for (int i = 0; i < roots.size(); i++) {
+            long nodes = tasks.get(i).join();
+            System.out.println(toAlgebraic(roots.get(i)) + ": " + nodes);
+            total += nodes;
+        }
+        report(total, System.nanoTime() - start);
+        return total;
+    }
+
+    /**
+     * Counts the same position on pools of 1, 2, 4 ... threads up to the
+     * number of cores and prints the speed-up over one thread
+     */
+    public static void scaling(BitboardChessBoard b, int depth) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        double baseline = 0;
+        for (int threads = 1; threads <= cores;
+                threads = threads == cores ? cores + 1
+                    : Math.min(threads * 2, cores)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long start = System.nanoTime();
+            long nodes = pool.invoke(new PerftTask(b, PackedMove.NONE,
+                        depth, 2));
+            double speed = nodes / ((System.nanoTime() - start) / 1e9);
+            pool.shutdown();
+
+            if (threads == 1) {
+                baseline = speed;
+            }
+            System.out.printf("%2d threads: %d nodes, %.0f nodes/s, %.2fx%n",
+                    threads, nodes, speed, speed / baseline);
+        }
+    }
+
+    /**
+     * Runs every reference position up to depth, or as deep as its known
+     * counts go
+     *
+     * @return true if every count matched
+     */
+    public static boolean runSuite(int depth) {
+        boolean allPassed = true;
+        long totalNodes = 0;
+        long totalTime = 0;
+
+        for (String[] reference : REFERENCE) {
+            String[] expected = reference[1].split(" ");
+            int maxDepth = Math.min(depth, expected.length);
+            System.out.println(reference[0]);
+
+            Perft perft = new Perft(maxDepth);
+            for (int d = 1; d <= maxDepth; d++) {
+                BitboardChessBoard b = Fen.toBitboardChessBoard(reference[0]);
+                long start = System.nanoTime();
+                long nodes = perft.perft(b, d);
+                long elapsed = System.nanoTime() - start;
+                totalNodes += nodes;
+                totalTime += elapsed;
+
+                boolean passed = nodes == Long.parseLong(expected[d - 1]);
+                allPassed &= passed;
+                System.out.println("  depth " + d + ": " + nodes
+                        + (passed ? "" : " FAILED, expected "
+                            + expected[d - 1]));
+            }
+        }
+        report(totalNodes, totalTime);
+        System.out.println(allPassed ? "All counts match" : "MISMATCH");
+
+        List<String> keyPositions = new ArrayList<>();
+        for (String[] reference : REFERENCE) {
+            keyPositions.add(reference[0]);
+        }
+        keyPositions.addAll(Arrays.asList(KEY_POSITIONS));
+        long keyErrors = 0;
+        for (String fen : keyPositions) {
+            long errors = checkKeys(Fen.toBitboardChessBoard(fen),
+                    KEY_CHECK_DEPTH);
+            if (errors > 0) {
+                System.out.println(fen + "\n  " + errors
+                        + " hash keys differ from their FEN's");
+            }
+            keyErrors += errors;
+        }
+        System.out.println(keyErrors == 0 ? "All hash keys match"
+                : "HASH KEY MISMATCH");
+
+        boolean historyKept = checkHistory();
+        System.out.println(historyKept ? "Position history kept"
+                : "POSITION HISTORY CHANGED");
+        return allPassed && keyErrors == 0 && historyKept;
+    }
+
+    /**
+     * Brings a ChessBoard back to the start with two knight moves each,
+     * then tries every move of both sides with pieceCanMove, which must
+     * leave the positions recorded for repetitions as they were
+     *
+     * @return true if the start still counts as seen once before
+     */
+    public static boolean checkHistory() {
+        // a move tried for the side that just moved, on an empty history
+        new ChessBoard().pieceCanMove(
+                new Move(Position.of(1, 4), Position.of(3, 4)), Side.BLACK);
+
+        ChessBoard b = new ChessBoard();
+        int[][] knightMoves = {
+            {7, 6, 5, 5}, {0, 6, 2, 5}, {5, 5, 7, 6}, {2, 5, 0, 6}
+        };
+        for (int[] k : knightMoves) {
+            Position start = Position.of(k[0], k[1]);
+            b.movePiece(b.getPieceAt(start),
+                    new Move(start, Position.of(k[2], k[3])));
+        }
+        if (b.countRepetitions() != 1) {
+            return false;
+        }
+
+        for (Side s : Side.values()) {
+            for (Set<Move> moves : b.generateMovesForSide(s).values()) {
+                for (Move m : moves) {
+                    b.pieceCanMove(m, s);
+                }
+            }
+        }
+        return b.countRepetitions() == 1;
+    }
+
+    /**
+     * Plays every line depth plies deep from b with makeMove, comparing the
+     * hash key after each move with the key of a board set up from scratch
+     * from the same FEN
+     *
+     * @return the number of keys that differed
+     */
+    public static long checkKeys(BitboardChessBoard b, int depth) {
+        if (depth == 0) {
+            return 0;
+        }
+        MoveList moves = new MoveList();
+        b.generateLegalMoves(b.getSideToMove(), moves);
+
+        long errors = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            b.makeMove(moves.get(i));
+            BitboardChessBoard rebuilt =
+                Fen.toBitboardChessBoard(Fen.toFen(b));
+            if (b.getHashKey() != rebuilt.getHashKey()) {
+                errors++;
+            }
+            errors += checkKeys(b, depth - 1);
+            b.unmakeMove();
+        }
+        return errors;
+    }
+
+    /**
+     * @return the move as from and to squares, e.g. e2e4 or e7e8q
+     */
+    public static String toAlgebraic(int move) {
+        String s = square(PackedMove.from(move)) + square(PackedMove.to(move));
+        if (PackedMove.isPromotion(move)) {
+            s += "nbrq".charAt(PackedMove.flags(move) & 3);
+        }
+        return s;
+    }
+
+    private static String square(int sq) {
+        return "" + (char) ('a' + Bitboards.col(sq))
+            + (char) ('8' - Bitboards.row(sq));
+    }
+
+    /**
+     * Counts to depth below every position in file, reading them all into
+     * one reused board
+     *
+     * @return the total node count
+     */
+    public static long runFile(Path file, int depth) throws IOException {
+        Perft perft = new Perft(depth);
+        BitboardChessBoard b = new BitboardChessBoard();
+        long nodes = 0;
+        int positions = 0;
+        long start = System.nanoTime();
+        try (FenReader in = FenReader.open(file)) {
+            while (in.readInto(b)) {
+                positions++;
+                nodes += perft.perft(b, depth);
+            }
+        }
+        System.out.println("Positions: " + positions);
+        report(nodes, System.nanoTime() - start);
+        return nodes;
+    }
+
+    private static void report(long nodes, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.println();
+        System.out.println("Nodes: " + nodes);
+        System.out.printf("Time: %.3f s%n", seconds);
+        System.out.printf("Speed: %.0f nodes/s%n",
+                seconds > 0 ? nodes / seconds : 0.0);
+    }
+
+    private static void usage() {
+        System.err.println("usage: Perft [-chess] depth [fen]");
+        System.err.println("       Perft -threads n depth [fen]");
+        System.err.println("       Perft -scaling depth [fen]");
+        System.err.println("       Perft -suite [depth]");
+        System.err.println("       Perft -file depth path");
+        System.exit(2);
+    }
+
+    private static int parseDepth(String arg) {
+        int depth = Integer.parseInt(arg);
+        if (depth < 1) {
+            usage();
+        }
+        return depth;
+    }
+
+    // the FEN may be given as one argument or split over several
+    private static BitboardChessBoard parseFen(String[] args, int first) {
+        return Fen.toBitboardChessBoard(first < args.length
+                ? joinFen(args, first) : Fen.START);
+    }
+
+    // the shell splits a FEN given without quotes into its fields
+    private static String joinFen(String[] args, int first) {
+        StringBuilder fen = new StringBuilder();
+        for (int i = first; i < args.length; i++) {
+            fen.append(args[i]).append(' ');
+        }
+        return fen.toString();
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            usage();
+        }
+
+        try {
+            if (args[0].equals("-suite")) {
+                int depth = args.length > 1
+                    ? Integer.parseInt(args[1]) : DEFAULT_SUITE_DEPTH;
+                System.exit(runSuite(depth) ? 0 : 1);
+            } else if (args[0].equals("-chess")) {
+                if (args.length < 2) {
+                    usage();
+                }
+                int depth = parseDepth(args[1]);
+                ChessBoard b = args.length > 2
+                    ? Fen.toChessBoard(joinFen(args, 2)) : new ChessBoard();
+                long start = System.nanoTime();
+                long nodes = perft(b, b.getSideToMove(), depth);
+                report(nodes, System.nanoTime() - start);
+            } else if (args[0].equals("-file")) {
+                if (args.length < 3) {
+                    usage();
+                }
+                int depth = Integer.parseInt(args[1]);
+                if (depth < 0) {
+                    usage();
+                }
+                runFile(Paths.get(args[2]), depth);
+            } else if (args[0].equals("-threads")) {
+                if (args.length < 3) {
+                    usage();
+                }
+                int threads = Integer.parseInt(args[1]);
+                int depth = parseDepth(args[2]);
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                divide(parseFen(args, 3), depth, pool);
+                pool.shutdown();
+            } else if (args[0].equals("-scaling")) {
+                if (args.length < 2) {
+                    usage();
+                }
+                int depth = parseDepth(args[1]);
+                scaling(parseFen(args, 2), depth);
+            } else {
+                int depth = parseDepth(args[0]);
+                new Perft(depth).divide(parseFen(args, 1), depth);
+            }
+        } catch (NumberFormatException e) {
+            usage();
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Counts the subtree below one move. While splitPlies is above zero the
+     * replies are counted by child tasks, so idle threads can steal them;
+     * below that the count runs sequentially on this task's own board copy.
+     */
+    @SuppressWarnings("serial")
+    private static class PerftTask extends RecursiveTask<Long> {
+
+        private final BitboardChessBoard board;
+        private final int depth;
+        private final int splitPlies;
+
+        /**
+         * @param parent the position before move, which is not changed
+         * @param move the move to count below, or PackedMove.NONE to count
+         * parent itself
+         */
+        PerftTask(BitboardChessBoard parent, int move, int depth,
+                int splitPlies) {
+            board = new BitboardChessBoard(parent);
+            if (move != PackedMove.NONE) {
+                board.makeMove(move);
+            }
+            this.depth = depth;
+            this.splitPlies = splitPlies;
+        }
+
+        @Override
+        protected Long compute() {
+            if (splitPlies == 0 || depth < 3) {
+                return new Perft(depth).perft(board, depth);
+            }
+
+            MoveList moves = new MoveList();
+            board.generateLegalMoves(board.getSideToMove(), moves);
+            List<PerftTask> children = new ArrayList<>();
+            for (int i = 0; i < moves.size(); i++) {
+                children.add(new PerftTask(board, moves.get(i), depth - 1,
+                            splitPlies - 1));
+            }
+
+            long nodes = 0;
+            for (PerftTask child : invokeAll(children)) {
+                nodes += child.join();
+            }
+            return nodes;
+        }
+    }
+}
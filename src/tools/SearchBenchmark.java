@@ -0,0 +1,175 @@
+package tools;
+
+import gamecontrol.ai.AlphaBetaChessEngine;
+import gamecontrol.ai.AlphaBetaChessEngine.ParallelMode;
+import model.chess.BitboardChessBoard;
+import model.chess.Fen;
+
+/**
+ * Runs the search engine over a fixed set of positions, for a set time
+ * each, and prints how many nodes per second it reaches and how deep it
+ * gets. With -scaling the same is done with 1, 2, 4 ... threads up to the
+ * number of cores, showing how the speed of the Lazy SMP search grows with
+ * threads.
+ *
+ * -compare searches every position to a fixed depth instead, on one thread
+ * and then in both parallel modes, and prints how much sooner each mode
+ * gets there (the speed-up) and how many more nodes it searches to do so
+ * (the search overhead).
+ *
+ * Every position starts with an empty transposition table, so results do
+ * not depend on the order the positions are run in.
+ *
+ * Usage:
+ *   SearchBenchmark [-threads n] [millis]   one run
+ *   SearchBenchmark -scaling [millis]       1, 2, 4 ... up to all cores
+ *   SearchBenchmark -compare n depth        both modes on n threads
+ */
+public class SearchBenchmark {
+
+    private static final String[] POSITIONS = {
+        Fen.START,
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq -",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - -",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq -",
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - "
+            + "0 10",
+        "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3",
+        "2rq1rk1/pp1bppbp/2np1np1/8/3NP3/1BN1BP2/PPPQ2PP/2KR3R b - - 4 11",
+        "8/5pk1/6p1/8/3R4/6P1/5PK1/1r6 w - - 0 40",
+        "4r1k1/1p3ppp/p1p5/3n4/3P4/P1N1R3/1P3PPP/6K1 w - - 0 25"
+    };
+
+    private static final long DEFAULT_MILLIS = 1000;
+    private static final int HASH_MEGABYTES = 64;
+    private static final int MAX_DEPTH = 64;
+
+    // time per position of a first run that is not measured, so that the
+    // JIT has compiled the search before the one-thread baseline
+    private static final long WARM_UP_MILLIS = 500;
+
+    /**
+     * Totals of one run over every position
+     */
+    private static class Result {
+        long nodes;
+        long nanos;
+        int depths;
+
+        double nodesPerSecond() {
+            return nodes / (nanos / 1e9);
+        }
+
+        double averageDepth() {
+            return (double) depths / POSITIONS.length;
+        }
+    }
+
+    // searches every position for millis, or to depth, with the given
+    // number of threads
+    private static Result run(int threads, ParallelMode mode, long millis,
+            int depth) {
+        AlphaBetaChessEngine engine = new AlphaBetaChessEngine(millis,
+                Long.MAX_VALUE, depth, HASH_MEGABYTES);
+        engine.setThreads(threads);
+        engine.setParallelMode(mode);
+        Result total = new Result();
+        for (String fen : POSITIONS) {
+            engine.getTranspositionTable().clear();
+            BitboardChessBoard b = Fen.toBitboardChessBoard(fen);
+
+            long start = System.nanoTime();
+            engine.chooseNextMove(b.generateMovesForSide(b.getSideToMove()),
+                    b);
+            total.nanos += System.nanoTime() - start;
+            total.nodes += engine.getLastNodes();
+            total.depths += engine.getLastDepth();
+        }
+        // lets the helper threads go
+        engine.setThreads(1);
+        return total;
+    }
+
+    private static void print(int threads, Result r, double baseline) {
+        System.out.printf("%2d threads: %d nodes, %.0f nodes/s, %.2fx, "
+                + "depth %.1f%n", threads, r.nodes, r.nodesPerSecond(),
+                r.nodesPerSecond() / baseline, r.averageDepth());
+    }
+
+    /**
+     * Runs the positions on 1, 2, 4 ... threads up to the number of cores
+     * and prints the speed of each against one thread
+     */
+    public static void scaling(long millis) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        run(1, ParallelMode.LAZY_SMP, WARM_UP_MILLIS, MAX_DEPTH);
+        double baseline = 0;
+        for (int threads = 1; threads <= cores;
+                threads = threads == cores ? cores + 1
+                    : Math.min(threads * 2, cores)) {
+            Result r = run(threads, ParallelMode.LAZY_SMP, millis, MAX_DEPTH);
+            if (threads == 1) {
+                baseline = r.nodesPerSecond();
+            }
+            print(threads, r, baseline);
+        }
+    }
+
+    /**
+     * Searches every position to depth on one thread, then on the given
+     * number of threads in each parallel mode, and prints the speed-up and
+     * search overhead of each mode
+     */
+    public static void compare(int threads, int depth) {
+        run(1, ParallelMode.LAZY_SMP, WARM_UP_MILLIS, MAX_DEPTH);
+        Result serial = run(1, ParallelMode.LAZY_SMP, Long.MAX_VALUE, depth);
+        System.out.printf("%-21s %6.2f s, %d nodes%n", "1 thread:",
+                serial.nanos / 1e9, serial.nodes);
+        for (ParallelMode mode : ParallelMode.values()) {
+            Result r = run(threads, mode, Long.MAX_VALUE, depth);
+            System.out.printf("%-21s %6.2f s, %d nodes, %.2fx speed-up, "
+                    + "%+.0f%% nodes%n", mode + ":", r.nanos / 1e9, r.nodes,
+                    (double) serial.nanos / r.nanos,
+                    100.0 * r.nodes / serial.nodes - 100);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: SearchBenchmark [-threads n] [millis]");
+        System.err.println("       SearchBenchmark -scaling [millis]");
+        System.err.println("       SearchBenchmark -compare n depth");
+        System.exit(2);
+    }
+
+    public static void main(String[] args) {
+        try {
+            if (args.length > 0 && args[0].equals("-compare")) {
+                if (args.length < 3) {
+                    usage();
+                }
+                compare(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            } else if (args.length > 0 && args[0].equals("-scaling")) {
+                scaling(args.length > 1
+                        ? Long.parseLong(args[1]) : DEFAULT_MILLIS);
+            } else {
+                int threads = 1;
+                int next = 0;
+                if (args.length > 1 && args[0].equals("-threads")) {
+                    threads = Integer.parseInt(args[1]);
+                    next = 2;
+                }
+                long millis = args.length > next
+                    ? Long.parseLong(args[next]) : DEFAULT_MILLIS;
+                Result r = run(threads, ParallelMode.LAZY_SMP, millis,
+                        MAX_DEPTH);
+                print(threads, r, r.nodesPerSecond());
+            }
+        } catch (NumberFormatException e) {
+            usage();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+    }
+}